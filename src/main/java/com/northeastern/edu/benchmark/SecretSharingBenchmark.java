@@ -0,0 +1,177 @@
+package com.northeastern.edu.benchmark;
+
+import com.northeastern.edu.secretSharing.Gf256Splitter;
+import com.northeastern.edu.secretSharing.Key;
+import com.northeastern.edu.secretSharing.PrimeFieldSplitter;
+import javafx.util.Pair;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the arithmetic of a login, splitting a password into keys and
+ * reconstructing it from three of them, over the integers with rational
+ * interpolation, the way the keys were computed, with the engines modulo a
+ * prime and over GF(2^8). Then measures the throughput of the GF(2^8)
+ * engine on a large secret.
+ *
+ * Usage: SecretSharingBenchmark [secret bytes] [logins] [iterations] [large secret MB]
+ */
+public class SecretSharingBenchmark {
+
+    //Keys generated and keys needed, as in SecretSharing.
+    private static final int SHARES = 5;
+    private static final int REQUIRED = 3;
+
+    public static void main(String[] args) {
+        int secretSize = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int logins = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int largeSize = (args.length > 3 ? Integer.parseInt(args[3]) : 16) << 20;
+
+        PrimeFieldSplitter prime = new PrimeFieldSplitter(SHARES, REQUIRED);
+        Gf256Splitter gf256 = new Gf256Splitter(SHARES, REQUIRED);
+
+        Random random = new Random(42);
+        List<byte[]> secrets = new ArrayList<>();
+        for (int index = 0; index < logins; index++) {
+            byte[] secret = new byte[secretSize];
+            for (int position = 0; position < secretSize; position++) {
+                secret[position] = (byte) ('!' + random.nextInt(94));
+            }
+            secrets.add(secret);
+        }
+
+        System.out.println("Secret size: " + secretSize + " bytes, logins: " + logins + ", iterations: " + iterations);
+
+        for (int iteration = 0; iteration <= iterations; iteration++) {
+            //The first round warms up the JIT and is not reported.
+            boolean report = iteration > 0;
+
+            long start = System.nanoTime();
+            int rationalMismatches = 0;
+            for (byte[] secret : secrets) {
+                BigInteger value = new BigInteger(1, secret);
+                List<Key> keys = subset(rationalSplit(value, random), random);
+                if (!rationalCombine(keys).equals(value)) {
+                    rationalMismatches++;
+                }
+            }
+            long rational = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (byte[] secret : secrets) {
+                BigInteger value = new BigInteger(1, secret);
+                List<Key> keys = subset(prime.split(value), random);
+                if (!value.equals(prime.combineValue(keys))) {
+                    throw new IllegalStateException("Secret " + value + " was not reconstructed");
+                }
+            }
+            long field = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (byte[] secret : secrets) {
+                List<Key> keys = subset(gf256.split(secret), random);
+                if (!Arrays.equals(secret, gf256.combine(keys))) {
+                    throw new IllegalStateException("Secret was not reconstructed over GF(2^8)");
+                }
+            }
+            long bytewise = System.nanoTime() - start;
+
+            if (report) {
+                System.out.println(String.format("Round %d: rational %.1fus per login (%d mismatches), "
+                                + "prime field %.1fus, GF(2^8) %.1fus per login",
+                        iteration, rational / 1000.0 / logins, rationalMismatches, field / 1000.0 / logins,
+                        bytewise / 1000.0 / logins));
+            }
+        }
+
+        throughput(gf256, largeSize, iterations, random);
+    }
+
+    //Splits and combines a large secret over GF(2^8) with buffers allocated
+    //once, random coefficients drawn once, and reports the rate in MB/s.
+    private static void throughput(Gf256Splitter gf256, int size, int iterations, Random random) {
+        byte[] secret = new byte[size];
+        byte[] coefficients = new byte[(REQUIRED - 1) * size];
+        random.nextBytes(secret);
+        random.nextBytes(coefficients);
+        byte[][] shares = new byte[SHARES][size];
+        byte[] combined = new byte[size];
+        int[] points = {1, 3, 5};
+        byte[][] subset = {shares[0], shares[2], shares[4]};
+
+        System.out.println("Large secret: " + (size >> 20) + " MB");
+        for (int iteration = 0; iteration <= iterations; iteration++) {
+            long start = System.nanoTime();
+            gf256.split(secret, coefficients, shares);
+            long split = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            gf256.combine(points, subset, combined);
+            long combine = System.nanoTime() - start;
+
+            if (!Arrays.equals(secret, combined)) {
+                throw new IllegalStateException("Large secret was not reconstructed");
+            }
+            if (iteration > 0) {
+                System.out.println(String.format("Round %d: split %.0f MB/s, combine %.0f MB/s", iteration,
+                        size / 1048576.0 / (split / 1e9), size / 1048576.0 / (combine / 1e9)));
+            }
+        }
+    }
+
+    //Picks the keys a client would be sent, at random.
+    private static List<Key> subset(List<Key> keys, Random random) {
+        List<Key> shuffled = new ArrayList<>(keys);
+        Collections.shuffle(shuffled, random);
+        return shuffled.subList(0, REQUIRED);
+    }
+
+    //Splits a secret over the integers, with coefficients below the secret.
+    private static List<Key> rationalSplit(BigInteger secret, Random random) {
+        List<BigInteger> coefficients = new ArrayList<>();
+        coefficients.add(secret);
+        while (coefficients.size() < REQUIRED) {
+            BigInteger coefficient = new BigInteger(secret.bitLength(), random);
+            coefficients.add(coefficient.mod(secret.subtract(BigInteger.ONE)).add(BigInteger.ONE));
+        }
+
+        List<Key> keys = new ArrayList<>();
+        for (int i = 1; i <= SHARES; i++) {
+            BigInteger x = BigInteger.valueOf(i);
+            BigInteger y = BigInteger.ZERO;
+            for (int power = 0; power < coefficients.size(); power++) {
+                y = y.add(coefficients.get(power).multiply(x.pow(power)));
+            }
+            keys.add(new Key(new Pair<>(i, y)));
+        }
+        return keys;
+    }
+
+    //Interpolates at x = 0 with BigDecimal at scale 12, rounding half up.
+    private static BigInteger rationalCombine(List<Key> keys) {
+        BigDecimal y = BigDecimal.ZERO;
+        for (int j = 0; j < keys.size(); j++) {
+            BigDecimal xj = BigDecimal.valueOf(keys.get(j).getPoint().getKey());
+            BigDecimal yj = new BigDecimal(keys.get(j).getPoint().getValue());
+            BigDecimal l = BigDecimal.ONE;
+
+            for (int m = 0; m < keys.size(); m++) {
+                if (j != m) {
+                    BigDecimal xm = BigDecimal.valueOf(keys.get(m).getPoint().getKey());
+                    BigDecimal numerator = BigDecimal.ZERO.subtract(xm).setScale(12, BigDecimal.ROUND_HALF_UP);
+                    BigDecimal denominator = xj.subtract(xm).setScale(12, BigDecimal.ROUND_HALF_UP);
+                    l = l.multiply(numerator.divide(denominator, BigDecimal.ROUND_HALF_UP));
+                }
+            }
+            y = y.add(yj.multiply(l));
+        }
+        return y.setScale(0, BigDecimal.ROUND_HALF_UP).toBigInteger();
+    }
+}
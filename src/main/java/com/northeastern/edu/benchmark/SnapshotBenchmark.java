@@ -0,0 +1,160 @@
+package com.northeastern.edu.benchmark;
+
+import com.northeastern.edu.storage.ClientLogin;
+import com.northeastern.edu.storage.SnapshotCodec;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares saving and loading the server state as a JSON document, the way
+ * the data file was written, with the binary snapshot codec.
+ *
+ * Usage: SnapshotBenchmark [keys] [value bytes] [clients] [iterations]
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws IOException, ParseException {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int valueSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int clientCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        Map<String, String> data = new HashMap<>();
+        Map<String, List<String>> keys = new HashMap<>();
+        Map<String, String> commitTimes = new HashMap<>();
+        generate(keyCount, valueSize, clientCount, data, keys, commitTimes);
+
+        File jsonFile = File.createTempFile("benchmark", ".json");
+        File binaryFile = File.createTempFile("benchmark", ".snapshot");
+        jsonFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+
+        System.out.println("Keys: " + keyCount + ", value size: " + valueSize + " bytes, clients: "
+                + clientCount + ", iterations: " + iterations);
+
+        for (int iteration = 0; iteration <= iterations; iteration++) {
+            //The first round warms up the JIT and is not reported.
+            boolean report = iteration > 0;
+
+            long start = System.nanoTime();
+            writeJson(jsonFile, data, keys, commitTimes);
+            long jsonWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long jsonEntries = readJson(jsonFile);
+            long jsonRead = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            writeBinary(binaryFile, data, keys, commitTimes);
+            long binaryWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long binaryEntries = readBinary(binaryFile);
+            long binaryRead = System.nanoTime() - start;
+
+            if (jsonEntries != binaryEntries) {
+                throw new IllegalStateException("JSON read " + jsonEntries + " entries, binary " + binaryEntries);
+            }
+
+            if (report) {
+                System.out.println(String.format("Round %d: json write %dms read %dms (%d KB), "
+                                + "binary write %dms read %dms (%d KB)",
+                        iteration, jsonWrite / 1000000, jsonRead / 1000000, jsonFile.length() / 1024,
+                        binaryWrite / 1000000, binaryRead / 1000000, binaryFile.length() / 1024));
+            }
+        }
+    }
+
+    //Fills the sections with random entries.
+    private static void generate(int keyCount, int valueSize, int clientCount, Map<String, String> data,
+                                 Map<String, List<String>> keys, Map<String, String> commitTimes) {
+        Random random = new Random(42);
+        char[] value = new char[valueSize];
+
+        for (int index = 0; index < keyCount; index++) {
+            for (int position = 0; position < valueSize; position++) {
+                value[position] = (char) ('a' + random.nextInt(26));
+            }
+            data.put("key" + index, new String(value));
+        }
+
+        for (int client = 0; client < clientCount; client++) {
+            String address = "10.0." + (client / 256) + "." + (client % 256);
+            keys.put(address, Arrays.asList(
+                    "(1," + random.nextLong() + ")", "(2," + random.nextLong() + ")", "(3," + random.nextLong() + ")"));
+            commitTimes.put(address, "2019-06-12T10:15:30." + client);
+        }
+    }
+
+    //Writes the sections the way the data file was written.
+    private static void writeJson(File file, Map<String, String> data, Map<String, List<String>> keys,
+                                  Map<String, String> commitTimes) throws IOException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("data", data);
+        jsonObject.put("keys", keys);
+        jsonObject.put("commit", commitTimes);
+
+        try (OutputStream writer = new FileOutputStream(file)) {
+            writer.write(jsonObject.toJSONString().getBytes());
+        }
+    }
+
+    //Parses the data file and counts its entries.
+    private static long readJson(File file) throws IOException, ParseException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            Map<String, Map<String, Object>> sections = (Map<String, Map<String, Object>>) new JSONParser().parse(reader);
+
+            long entries = 0;
+            for (Map<String, Object> section : sections.values()) {
+                entries += section.size();
+            }
+            return entries;
+        }
+    }
+
+    //Encodes the sections with the snapshot codec.
+    private static void writeBinary(File file, Map<String, String> data, Map<String, List<String>> keys,
+                                    Map<String, String> commitTimes) throws IOException {
+        try (OutputStream stream = new FileOutputStream(file)) {
+            SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder(stream, 0);
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                encoder.data(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, List<String>> entry : keys.entrySet()) {
+                encoder.clientLogin(entry.getKey(), new ClientLogin("", entry.getValue()));
+            }
+            for (Map.Entry<String, String> entry : commitTimes.entrySet()) {
+                encoder.commitTime(entry.getKey(), entry.getValue());
+            }
+            encoder.finish();
+        }
+    }
+
+    //Decodes a snapshot and counts its entries.
+    private static long readBinary(File file) throws IOException {
+        AtomicLong entries = new AtomicLong();
+        try (FileInputStream stream = new FileInputStream(file)) {
+            SnapshotCodec.decode(stream,
+                    (key, value) -> entries.incrementAndGet(),
+                    (client, login) -> entries.incrementAndGet(),
+                    (client, commitTime) -> entries.incrementAndGet());
+        }
+
+        return entries.get();
+    }
+}
@@ -7,6 +7,7 @@ import generated.thrift.impl.RequestPacket;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
@@ -41,6 +42,9 @@ public class RPCClient {
     //Replica Server Communication Ports.
     private static Map<CommunicationService.Client, Boolean> clients;
 
+    //Sockets of the replica clients, for their addresses.
+    private static Map<CommunicationService.Client, TSocket> sockets = new HashMap<>();
+
     //Running Server
     private static CommunicationService.Client availableServer;
 
@@ -144,16 +148,19 @@ public class RPCClient {
     }
 
     //Creates server instances for the replicas and maintains the health of the
-    //instances.
+    //instances. The replicas listen on their server-to-server ports, which
+    //expect framed messages.
     private static void generateClients(List<String> replicaAddresses) throws TTransportException {
         //For each replica
         for (String replicaPort : replicaAddresses) {
-            TTransport transport = new TSocket(serverAddress, Integer.parseInt(replicaPort));
+            TSocket socket = new TSocket(serverAddress, Integer.parseInt(replicaPort));
+            TTransport transport = new TFramedTransport(socket);
             transport.open();
 
             TProtocol protocol = new TBinaryProtocol(transport);
             CommunicationService.Client client = new CommunicationService.Client(protocol);
             clients.put(client, true);
+            sockets.put(client, socket);
         }
     }
 
@@ -364,7 +371,7 @@ public class RPCClient {
 
     //Gets the socket address for a given client/server object.
     private static String getAddressForClient(CommunicationService.Client client) {
-        TSocket socket = (TSocket) client.getOutputProtocol().getTransport();
+        TSocket socket = sockets.get(client);
         return socket.getSocket().getRemoteSocketAddress().toString();
     }
 }
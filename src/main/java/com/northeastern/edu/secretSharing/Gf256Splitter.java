@@ -0,0 +1,253 @@
+package com.northeastern.edu.secretSharing;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Shares each byte of the secret on its own over GF(2^8), the field of AES
+ * with the polynomial x^8 + x^4 + x^3 + x + 1, so a secret of any length
+ * is split into shares of the same length.
+ *
+ * Addition in the field is XOR. Products are looked up in a table of all
+ * 256 x 256 of them, built once from log and exp tables, so splitting and
+ * combining take a few lookups and XORs per byte. The array variants of
+ * split and combine write into buffers of the caller and allocate nothing
+ * per byte.
+ */
+public class Gf256Splitter implements SecretSplitter {
+
+    //Powers of the generator 3, twice over so a sum of two logs needs no
+    //reduction, and the log of each nonzero element.
+    private static final int[] EXP = new int[510];
+    private static final int[] LOG = new int[256];
+
+    //Product of a and b at (a << 8) | b.
+    private static final byte[] MUL = new byte[256 * 256];
+
+    static {
+        int element = 1;
+        for (int power = 0; power < 255; power++) {
+            EXP[power] = element;
+            EXP[power + 255] = element;
+            LOG[element] = power;
+            //Times 3: the element times x, reduced by the polynomial, plus the element.
+            int doubled = element << 1;
+            if ((doubled & 0x100) != 0) {
+                doubled ^= 0x11B;
+            }
+            element ^= doubled;
+        }
+
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL[(a << 8) | b] = (byte) EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    //Draws the coefficients of the polynomials.
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    //Writes and reads the shares in keys.
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    //Number of keys a secret is split into, and that reconstruct it.
+    private final int n;
+    private final int k;
+
+    //Rows of the product table of the basis values of each k-subset of the
+    //points, at the bit mask of the subset and then at the point; null if
+    //n is too large.
+    private final int[][] bases;
+
+    public Gf256Splitter(int n, int k) {
+        if (n > 255 || k < 1 || k > n) {
+            throw new IllegalArgumentException("Cannot split into " + n + " keys, " + k + " of which are needed");
+        }
+        this.n = n;
+        this.k = k;
+        this.bases = n <= PrimeFieldSplitter.MAX_TABULATED_KEYS ? tabulate() : null;
+    }
+
+    //Computes the basis values of every k-subset of the points 1 to n.
+    private int[][] tabulate() {
+        int[][] table = new int[1 << n][];
+        for (int mask = 1; mask < table.length; mask++) {
+            if (Integer.bitCount(mask) == k) {
+                long[] points = SubsetMasks.points(mask, k);
+                int[] xs = new int[k];
+                for (int j = 0; j < k; j++) {
+                    xs[j] = (int) points[j];
+                }
+                table[mask] = new int[n + 1];
+                basisRows(xs, table[mask]);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public List<Key> split(byte[] secret) {
+        byte[] coefficients = new byte[(k - 1) * secret.length];
+        RANDOM.nextBytes(coefficients);
+        byte[][] shares = new byte[n][secret.length];
+        split(secret, coefficients, shares);
+        Arrays.fill(coefficients, (byte) 0);
+
+        List<Key> keys = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            keys.add(new Key(i + 1, shares[i]));
+        }
+        return keys;
+    }
+
+    /**
+     * Splits each byte b of a secret with the polynomial
+     * f(x) = s[b] + a1[b]x + ... + ak-1[b]x^k-1, evaluated by Horner's rule.
+     *
+     * @param secret       Secret to split.
+     * @param coefficients Random coefficients a1 to ak-1, each as long as the
+     *                     secret, one after the other.
+     * @param shares       Buffers for the n shares, the one for x = i + 1 at
+     *                     i, each as long as the secret.
+     */
+    public void split(byte[] secret, byte[] coefficients, byte[][] shares) {
+        int length = secret.length;
+        for (int i = 0; i < n; i++) {
+            int row = (i + 1) << 8;
+            byte[] share = shares[i];
+            if (k == 3) {
+                //The usual case, unrolled: a2 follows a1.
+                for (int b = 0; b < length; b++) {
+                    int y = (MUL[row | (coefficients[length + b] & 0xFF)] & 0xFF) ^ (coefficients[b] & 0xFF);
+                    share[b] = (byte) (MUL[row | y] ^ secret[b]);
+                }
+                continue;
+            }
+
+            for (int b = 0; b < length; b++) {
+                int y = 0;
+                for (int c = k - 2; c >= 0; c--) {
+                    y = (MUL[row | y] & 0xFF) ^ (coefficients[c * length + b] & 0xFF);
+                }
+                share[b] = (byte) ((MUL[row | y] & 0xFF) ^ (secret[b] & 0xFF));
+            }
+        }
+    }
+
+    @Override
+    public byte[] combine(List<Key> keys) {
+        int[] xs = new int[keys.size()];
+        byte[][] shares = new byte[keys.size()][];
+        for (int j = 0; j < keys.size(); j++) {
+            Key key = keys.get(j);
+            if (key.getShare() == null || key.getShare().length != keys.get(0).getShare().length) {
+                return null;
+            }
+            xs[j] = key.getX();
+            shares[j] = key.getShare();
+        }
+
+        byte[] secret = new byte[shares.length == 0 ? 0 : shares[0].length];
+        return combine(xs, shares, secret) ? secret : null;
+    }
+
+    /**
+     * Recovers each byte of a secret by Lagrange interpolation at x = 0:
+     * the XOR over j of yj * lj(0), where lj(0) = product over m != j of
+     * xm / (xm + xj). The basis values depend only on the points: those of
+     * k distinct points between 1 and n are looked up, those of other
+     * points computed once for all the bytes.
+     *
+     * @param xs     Points of the shares, between 1 and 255.
+     * @param shares Shares at those points, all as long as the secret.
+     * @param secret Buffer for the secret.
+     * @return Whether the points were distinct and in range.
+     */
+    public boolean combine(int[] xs, byte[][] shares, byte[] secret) {
+        int count = xs.length;
+        int mask = bases != null ? SubsetMasks.of(xs, n, k) : 0;
+        //Row of the product table of the basis value of each point.
+        int[] rows;
+        if (mask != 0) {
+            rows = bases[mask];
+        } else {
+            rows = new int[256];
+            if (!basisRows(xs, rows)) {
+                return false;
+            }
+        }
+
+        int length = secret.length;
+        if (count == 3) {
+            //The usual case, unrolled.
+            int row0 = rows[xs[0]];
+            int row1 = rows[xs[1]];
+            int row2 = rows[xs[2]];
+            byte[] share0 = shares[0];
+            byte[] share1 = shares[1];
+            byte[] share2 = shares[2];
+            for (int b = 0; b < length; b++) {
+                secret[b] = (byte) (MUL[row0 | (share0[b] & 0xFF)] ^ MUL[row1 | (share1[b] & 0xFF)]
+                        ^ MUL[row2 | (share2[b] & 0xFF)]);
+            }
+            return true;
+        }
+
+        for (int b = 0; b < length; b++) {
+            int value = 0;
+            for (int j = 0; j < count; j++) {
+                value ^= MUL[rows[xs[j]] | (shares[j][b] & 0xFF)];
+            }
+            secret[b] = (byte) value;
+        }
+        return true;
+    }
+
+    //Stores the row of the product table of the basis value of each point
+    //at the point, returning whether the points were distinct and between
+    //1 and 255.
+    private static boolean basisRows(int[] xs, int[] rows) {
+        for (int j = 0; j < xs.length; j++) {
+            int xj = xs[j];
+            if (xj < 1 || xj > 255) {
+                return false;
+            }
+            int logNumerator = 0;
+            int logDenominator = 0;
+            for (int m = 0; m < xs.length; m++) {
+                if (j != m) {
+                    if (xs[m] == xj) {
+                        return false;
+                    }
+                    logNumerator += LOG[xs[m]];
+                    logDenominator += LOG[xs[m] ^ xj];
+                }
+            }
+            rows[xj] = EXP[Math.floorMod(logNumerator - logDenominator, 255)] << 8;
+        }
+        return true;
+    }
+
+    @Override
+    public Key parseKey(String text) {
+        int separator = text.indexOf('=');
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new Key(Integer.parseInt(text.substring(0, separator)), DECODER.decode(text.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    //Writes a share the way keys show it.
+    static String encode(byte[] share) {
+        return ENCODER.encodeToString(share);
+    }
+}
@@ -6,20 +6,44 @@ import javafx.util.Pair;
 
 public class Key
 {
-    private Pair<Integer, BigInteger> point;
+    private final Pair<Integer, BigInteger> point;
+
+    //Point and share of a byte-wise engine, as long as the secret.
+    private final int x;
+    private final byte[] share;
 
     public Key(Pair<Integer, BigInteger> point) {
         this.point = point;
+        this.x = point != null ? point.getKey() : 0;
+        this.share = null;
+    }
+
+    public Key(int x, byte[] share) {
+        this.point = null;
+        this.x = x;
+        this.share = share;
     }
 
+    //Point of a key of the prime field engine, or null.
     public Pair<Integer, BigInteger> getPoint() {
         return point;
     }
 
+    public int getX() {
+        return x;
+    }
+
+    //Share of a key of a byte-wise engine, or null.
+    public byte[] getShare() {
+        return share;
+    }
+
     @Override
     public String toString() {
         if (point != null) {
             return point.toString();
+        } else if (share != null) {
+            return x + "=" + Gf256Splitter.encode(share);
         } else {
             return "";
         }
@@ -0,0 +1,254 @@
+package com.northeastern.edu.secretSharing;
+
+import javafx.util.Pair;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares the secret as a single number modulo a fixed prime, so every
+ * share is an exact integer below the prime and the secret is recovered
+ * exactly with modular inverses, whatever its length up to that of the
+ * prime.
+ *
+ * The keys are the points x = 1 to n, so the Lagrange basis values only
+ * depend on which k of them a client holds. They are computed for every
+ * such subset up front, and reconstruction takes k multiply-adds and a
+ * reduction.
+ */
+public class PrimeFieldSplitter implements SecretSplitter {
+
+    //Bits of the prime the shares are taken modulo.
+    private static final int PRIME_BITS = 521;
+
+    //Prime the shares are taken modulo: the Mersenne prime 2^521 - 1, which
+    //holds secrets of up to 65 bytes.
+    public static final BigInteger PRIME = BigInteger.ONE.shiftLeft(PRIME_BITS).subtract(BigInteger.ONE);
+
+    //Draws the coefficients of the polynomial.
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    //Most keys a secret may be split into for the basis values to be tabulated.
+    static final int MAX_TABULATED_KEYS = 16;
+
+    //Number of keys a secret is split into, and that reconstruct it.
+    private final int n;
+    private final int k;
+
+    //Basis values lj(0) of each k-subset of the points, at the bit mask of
+    //the subset and then at the point; null if n is too large.
+    private final BigInteger[][] bases;
+
+    public PrimeFieldSplitter(int n, int k) {
+        this.n = n;
+        this.k = k;
+        this.bases = n <= MAX_TABULATED_KEYS ? tabulate() : null;
+    }
+
+    @Override
+    public List<Key> split(byte[] secret) {
+        BigInteger value = new BigInteger(1, secret);
+        if (value.compareTo(PRIME) >= 0) {
+            throw new IllegalArgumentException("Secret of " + secret.length + " bytes does not fit the field");
+        }
+        return split(value);
+    }
+
+    /**
+     * Splits a secret below the prime into n keys, any k of which
+     * reconstruct it.
+     *
+     * @param secret Value of the secret.
+     * @return Keys for x = 1, 2, ...n
+     */
+    public List<Key> split(BigInteger secret) {
+        // obtain k - 1 random numbers (a1, a2, a3, etc.) to construct polynomial:
+        // f(x) = a0 + a1x + a2x^2 + ... mod p
+        return generateKeys(getCoefficients(secret));
+    }
+
+    @Override
+    public byte[] combine(List<Key> keys) {
+        for (Key key : keys) {
+            if (key.getPoint() == null) {
+                return null;
+            }
+        }
+        BigInteger secret = combineValue(keys);
+        if (secret == null) {
+            return null;
+        }
+
+        //The magnitude only, without the sign byte.
+        byte[] bytes = secret.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] magnitude = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, magnitude, 0, magnitude.length);
+            return magnitude;
+        }
+        return bytes;
+    }
+
+    /**
+     * Recovers the secret from k keys by Lagrange interpolation at x = 0,
+     * modulo the prime: the secret is the sum of yj * lj(0), where
+     * lj(0) = product over m != j of xm / (xm - xj). The basis values of
+     * k distinct points between 1 and n are looked up; those of other
+     * points are computed.
+     *
+     * @param keys Keys with distinct points.
+     * @return The secret, or null if two keys share a point.
+     */
+    public BigInteger combineValue(List<Key> keys) {
+        long[] points = new long[keys.size()];
+        for (int j = 0; j < points.length; j++) {
+            points[j] = keys.get(j).getPoint().getKey();
+        }
+
+        int mask = SubsetMasks.of(points, n, k);
+        BigInteger[] basis = bases != null && mask != 0 ? bases[mask] : null;
+        BigInteger y = BigInteger.ZERO;
+        for (int j = 0; j < points.length; j++) {
+            BigInteger value = basis != null ? basis[(int) points[j]] : basis(points, j);
+            if (value == null) {
+                return null;
+            }
+            y = y.add(keys.get(j).getPoint().getValue().multiply(value));
+        }
+        return reduce(y);
+    }
+
+    //Computes the basis values of every k-subset of the points 1 to n.
+    private BigInteger[][] tabulate() {
+        BigInteger[][] table = new BigInteger[1 << n][];
+        for (int mask = 1; mask < table.length; mask++) {
+            if (Integer.bitCount(mask) == k) {
+                long[] points = SubsetMasks.points(mask, k);
+                table[mask] = new BigInteger[n + 1];
+                for (int j = 0; j < k; j++) {
+                    table[mask][(int) points[j]] = basis(points, j);
+                }
+            }
+        }
+        return table;
+    }
+
+    //Basis value lj(0) of the j-th of some points, or null if another
+    //point equals it. The points are small, so the products are exact
+    //longs.
+    private static BigInteger basis(long[] points, int j) {
+        long numerator = 1;
+        long denominator = 1;
+        for (int m = 0; m < points.length; m++) {
+            if (j != m) {
+                numerator = Math.multiplyExact(numerator, points[m]);
+                denominator = Math.multiplyExact(denominator, points[m] - points[j]);
+            }
+        }
+        if (denominator == 0) {
+            return null;
+        }
+        return reduce(inverse(denominator).multiply(BigInteger.valueOf(numerator)));
+    }
+
+    @Override
+    public Key parseKey(String text) {
+        String[] value = text.split("=");
+        if (value.length != 2) {
+            return null;
+        }
+        try {
+            return new Key(new Pair<>(Integer.parseInt(value[0]), new BigInteger(value[1])));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Inverse of a small nonzero integer d modulo the prime, without the
+     * extended Euclid over the full width of the prime: (p * t + 1) / d
+     * for the t in [0, |d|) that makes the division exact, which only
+     * needs p mod |d|.
+     */
+    private static BigInteger inverse(long d) {
+        BigInteger magnitude = BigInteger.valueOf(Math.abs(d));
+        BigInteger remainder = PRIME.mod(magnitude);
+        BigInteger t = magnitude.equals(BigInteger.ONE) ? BigInteger.ZERO
+                : magnitude.subtract(remainder.modInverse(magnitude)).mod(magnitude);
+        BigInteger inverse = PRIME.multiply(t).add(BigInteger.ONE).divide(magnitude);
+        return d < 0 ? PRIME.subtract(inverse) : inverse;
+    }
+
+    /**
+     * Reduces a non-negative value modulo the prime. As 2^521 is 1 modulo
+     * 2^521 - 1, the bits above the 521st are added to the bits below
+     * until the value fits, which takes a mask, a shift and an addition
+     * instead of a division.
+     */
+    private static BigInteger reduce(BigInteger value) {
+        while (value.bitLength() > PRIME_BITS) {
+            value = value.and(PRIME).add(value.shiftRight(PRIME_BITS));
+        }
+        return value.compareTo(PRIME) >= 0 ? value.subtract(PRIME) : value;
+    }
+
+    /**
+     * Creates the polynomial to the k-1 term: f(x) = a0 + a1x + a2x^2 + ... + (ak-1(x^k-1
+     *
+     * @return list of the coeficients in the polynomial, where a0 = value of secret
+     */
+    private List<BigInteger> getCoefficients(BigInteger secret) {
+        List<BigInteger> coefficients = new ArrayList<>(k);
+        // a0 = secret big integer value
+        coefficients.add(secret);
+
+        // Randomly choose coefficients between 0 and p - 1
+        while (coefficients.size() < k) {
+            BigInteger coefficient = new BigInteger(PRIME_BITS, RANDOM);
+            if (coefficient.compareTo(PRIME) < 0) {
+                coefficients.add(coefficient);
+            }
+        }
+
+        return coefficients;
+
+    }
+
+    /**
+     * Constructs n points from the polynomial
+     *
+     * @return List of n points along the polynomial
+     */
+    private List<Key> generateKeys(List<BigInteger> coefs) {
+        List<Key> keys = new ArrayList<>(n);
+        // f(x) = a0 + a1x + a2x^2 + ... mod p
+        // Calculates points for when x = 1, 2, ...n
+        for (int i = 1; i <= n; i++) {
+            // Pair<x,y>, where y = f(x) mod p
+            keys.add(new Key(new Pair<>(i, getY(coefs, BigInteger.valueOf(i)))));
+        }
+        return keys;
+    }
+
+    /**
+     * Calculates the Y value for a given X from the polynomial f(x), by
+     * Horner's rule. x is small, so the value is reduced modulo the prime
+     * once at the end.
+     *
+     * @param coefs
+     * @param x
+     * @return y value from f(x) mod p
+     */
+    private static BigInteger getY(List<BigInteger> coefs, BigInteger x) {
+        //f(x) = a0 + x(a1 + x(a2 + ... x(an)))
+        BigInteger y = BigInteger.ZERO;
+
+        for (int i = coefs.size() - 1; i >= 0; i--) {
+            y = y.multiply(x).add(coefs.get(i));
+        }
+
+        return reduce(y);
+    }
+}
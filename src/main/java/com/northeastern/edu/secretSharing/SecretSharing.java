@@ -1,31 +1,62 @@
 package com.northeastern.edu.secretSharing;
 
-import javafx.util.Pair;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
-import java.io.*;
-import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.*;
-import java.util.logging.Logger;
 
 /**
  * Class prepares and reconstructs the secret keys
+ *
+ * The keys are computed by the splitter of the configured engine. The
+ * secret itself is not kept here: a salted digest of it is stored with
+ * the keys of each client, and reconstructed secrets are checked against
+ * the digest of their own client.
+ *
+ * An instance is immutable and keeps the state of a call in locals, so
+ * one instance serves concurrent logins.
  */
 public class SecretSharing {
-    //Logger for the class.
-    private static Logger LOGGER = Logger.getLogger(SecretSharing.class.getName());
 
-    private static String secretString;
-    private static BigInteger secret; // s
-    private static int n = 5;  // NUM_SHARES
-    private static int k = 3; // NUM_SUBSET_REQUIRED
-    private static String secretStorageFileName;
+    //Default number of keys a secret is split into, and that reconstruct it.
+    public static final int DEFAULT_SHARES = 5;
+    public static final int DEFAULT_REQUIRED = 3;
+
+    //Digest algorithm, and the number of random bytes salting a digest.
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int SALT_BYTES = 16;
+
+    //Separates the salt and the digest, both in Base64.
+    private static final String DIGEST_SEPARATOR = ":";
+
+    //Source of the salts.
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int n;  // NUM_SHARES
+    private final int k; // NUM_SUBSET_REQUIRED
 
-    public SecretSharing(String fileName) {
-        secretStorageFileName = fileName;
+    //Splits the secrets into keys and combines them.
+    private final SecretSplitter splitter;
+
+    public SecretSharing(SecretSplitter.Engine engine) {
+        this(engine, DEFAULT_SHARES, DEFAULT_REQUIRED);
+    }
+
+    /**
+     * @param engine Field the shares are computed over.
+     * @param n      Number of keys a secret is split into.
+     * @param k      Number of keys that reconstruct it.
+     */
+    public SecretSharing(SecretSplitter.Engine engine, int n, int k) {
+        this.n = n;
+        this.k = k;
+        this.splitter = SecretSplitter.create(engine, n, k);
+    }
+
+    //Number of keys that reconstruct a secret.
+    public int requiredKeys() {
+        return k;
     }
 
     /**
@@ -37,19 +68,20 @@ public class SecretSharing {
      *
      * @param s
      */
-    public List<Key> preparation(String s) throws IOException {
-        secretString = s;
-        // Convert input secret into BigInt format
-        secret = new BigInteger(1, s.getBytes());
-        LOGGER.info("Secret: " + secret);
-        writeSecretToMemory();
-
-        // obtain k - 1 random numbers (a1, a2, a3, etc.) to construct polynomial:
-        // f(x) = a0 + a1x + a2x^2 + ...
-        List<BigInteger> coefficients = getCoefficients();
+    public List<Key> preparation(String s) {
+        return splitter.split(s.getBytes());
+    }
 
-        // Generate list of Keys
-        return generateKeys(coefficients);
+    /**
+     * Salted digest of a secret, stored with the keys it is split into to
+     * check reconstructed secrets against.
+     *
+     * @param s
+     */
+    public String digest(String s) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return encode(salt) + DIGEST_SEPARATOR + encode(digest(salt, s.getBytes()));
     }
 
     /**
@@ -57,145 +89,60 @@ public class SecretSharing {
      * 1.) Need k keys to reconstruct secret -> ELSE reconstruction fails
      * 2.) Reconstruct polynomial using Lagrange Polynomial Interpolation
      * 3.) Solve for constant value to obtain original secret
-     * 4.) If reconstructd constant does not match original secret -> reconstruction fails
+     * 4.) If reconstructd constant does not match the digest of the original secret -> reconstruction fails
      *
      * @param clientKeyList
+     * @param secretDigest  Digest of the original secret, or an empty string if none was stored.
      */
-    public boolean reconstruction(List<Key> clientKeyList) throws IOException {
+    public boolean reconstruction(List<Key> clientKeyList, String secretDigest) {
         // Does client have enough keys to reconstruct secret?
         if (clientKeyList.size() != k) {
             return false;
         }
 
-        // Calculate Lagrange Basis Polynomials l(x)
-        List<Integer> lagrangeBasisPoly = new ArrayList<>();
-        BigDecimal y = BigDecimal.ZERO;
-        for (int j = 0; j < clientKeyList.size(); j++) {
-            System.out.println("x" + j + " " + clientKeyList.get(j).getPoint().getKey());
-            System.out.println("y" + j + " " + clientKeyList.get(j).getPoint().getValue());
-
-            BigDecimal xj = BigDecimal.valueOf(clientKeyList.get(j).getPoint().getKey());
-            BigDecimal yj = new BigDecimal(clientKeyList.get(j).getPoint().getValue());
-            //int l = 1;
-            BigDecimal l = BigDecimal.ONE;
-            //int x = 0;
-            BigDecimal x = BigDecimal.ZERO;
-
-            // Calculate the constants in the polynomial for each point and sum them together
-            for (int m = 0; m < clientKeyList.size(); m++) {
-                BigDecimal xm = BigDecimal.valueOf(clientKeyList.get(m).getPoint().getKey());
-                if (j != m) {
-                    // Lagrange Basis: l = l * ((x - xm) / (xj - xm));
-                    BigDecimal numerator = x.subtract(xm).setScale(12, BigDecimal.ROUND_HALF_UP);
-                    BigDecimal denominator = xj.subtract(xm).setScale(12, BigDecimal.ROUND_HALF_UP);
-                    BigDecimal result = numerator.divide(denominator, BigDecimal.ROUND_HALF_UP);
-                    l = l.multiply(result);
-                }
-            }
-            y = y.add(yj.multiply(l));
+        byte[] combined = splitter.combine(clientKeyList);
+        if (combined == null) {
+            return false;
         }
-        System.out.println("Y: " + y);
-
-        // Round big decimal Y
-        y = y.setScale(0, BigDecimal.ROUND_HALF_UP);
-        System.out.println("Yrounded: " + y);
-
-        // Convert y to BigInteger for comparison to secret (BigInteger)
-        BigInteger yConverted = y.toBigInteger();
-
-        System.out.println("Y big Integer: " + yConverted);
-
-        String sec = (String) loadSecretFromMemory(1);
 
-        if (!sec.isEmpty())
-        {
-            BigInteger storedSecret = new BigInteger(sec);
-            // Check that constructd Y value is equal to Secret value
-            if (yConverted.equals(storedSecret)) {
-                return true;
-            } else {
-                return false;
-            }
+        String[] parts = secretDigest.split(DIGEST_SEPARATOR);
+        if (parts.length != 2) {
+            return false;
         }
 
-        return false;
-
+        try {
+            byte[] salt = Base64.getDecoder().decode(parts[0]);
+            byte[] storedDigest = Base64.getDecoder().decode(parts[1]);
+            // Check that the digest of the constructed Y value is equal to the digest of the Secret value
+            return MessageDigest.isEqual(digest(salt, combined), storedDigest);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
-    /**
-     * Creates the polynomial to the k-1 term: f(x) = a0 + a1x + a2x^2 + ... + (ak-1(x^k-1
-     *
-     * @return list of the coeficients in the polynomial, where a0 = value of secret
-     */
-    private static List<BigInteger> getCoefficients() {
-        Set<BigInteger> setBigInt = new LinkedHashSet<>();
-        // a0 = secret big integer value
-        setBigInt.add(secret);
-
-        BigInteger bigInteger = secret;// upper limit
-        BigInteger min = BigInteger.ONE;// lower limit
-        BigInteger bigInteger1 = bigInteger.subtract(min);
-        Random rnd = new Random();
-        int maxNumBitLength = bigInteger.bitLength();
-
-        BigInteger aRandomBigInt;
-
-        // Randomly choose coefficients between 1 and value of secret
-        while (setBigInt.size() < k) {
-            aRandomBigInt = new BigInteger(maxNumBitLength, rnd);
-            if (aRandomBigInt.compareTo(min) < 0)
-                aRandomBigInt = aRandomBigInt.add(min);
-            if (aRandomBigInt.compareTo(bigInteger) >= 0)
-                aRandomBigInt = aRandomBigInt.mod(bigInteger1).add(min);
-            setBigInt.add(aRandomBigInt);
-            System.out.println("Coef: " + aRandomBigInt);
+    //Digest of a salt followed by a secret. The secret is taken as a
+    //number, as the prime field splitter drops its leading zero bytes.
+    private static byte[] digest(byte[] salt, byte[] secret) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            messageDigest.update(salt);
+            messageDigest.update(new BigInteger(1, secret).toByteArray());
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
         }
-
-        // Convert Set to List to allow for iteration by index
-        List<BigInteger> coefsList = new ArrayList<BigInteger>(setBigInt);
-
-        return coefsList;
-
     }
 
-    /**
-     * Constructs n points from the polynomial
-     *
-     * @return List of n points along the polynomial
-     */
-    private static List<Key> generateKeys(List<BigInteger> coefs) {
-        List<Key> keys = new LinkedList<>();
-        Key key;
-        // f(x) = a0 + a1x + a2x^2 + ...
-        // Calculates points for when x = 1, 2, ...n
-        for (int i = 1; i <= n; i++) {
-            BigInteger x = BigInteger.valueOf(i);
-            // create key with values point and p
-            // Pair<x,y<, where y = f(x) mod p
-            //key = new Key(new Pair<>(i, getY(coefs, x).mod(p)), p);
-            key = new Key(new Pair<>(i, getY(coefs, x)));
-            keys.add(key);
-        }
-        return keys;
+    private static String encode(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
     }
 
     /**
-     * Calculates the Y value for a given X from the polynomial f(x)
-     *
-     * @param coefs
-     * @param x
-     * @return y value from f(x)
+     * Reads a key stored for a client, or null if it is not a key of the
+     * configured engine.
      */
-    private static BigInteger getY(List<BigInteger> coefs, BigInteger x) {
-        //f(x) = a0 + a1x + a2x^2 + ...anx^n
-        BigInteger y = BigInteger.ZERO;
-
-        for (int i = 0; i < coefs.size(); i++) {
-            BigInteger xp = x.pow(i);
-            y = y.add(coefs.get(i).multiply(xp));
-        }
-
-        return y;
+    public Key parseKey(String text) {
+        return splitter.parseKey(text);
     }
 
 //    public static void main(String[] args) {
@@ -219,60 +166,4 @@ public class SecretSharing {
 //
 //        System.out.println(reconstruction(subsetKeyList));
 //    }
-
-    //Loads the client password value data store from memory.
-    protected Object loadSecretFromMemory(int mode) throws IllegalStateException, IOException {
-        try {
-            FileReader reader = new FileReader(secretStorageFileName);
-            JSONParser jsonParser = new JSONParser();
-            return ((Map<String, String>)jsonParser.parse(reader)).getOrDefault("secret", "");
-        } catch (IOException e) {
-            String message = "Error loading data from memory: " + e.getMessage();
-            LOGGER.severe(message);
-
-            if (mode == 0) {
-                new File(secretStorageFileName).createNewFile();
-            } else {}
-
-        } catch (ParseException e) {
-            LOGGER.info("File: " + secretStorageFileName + " is empty.");
-        }
-
-        return defaultMemoryObject();
-    }
-
-    //Generates the structure of a default memory object
-    protected Object defaultMemoryObject() {
-        Map<String, Object> defaultMemoryObject = new HashMap<>();
-        return defaultMemoryObject;
-    }
-
-    //Write the learned keys to memory
-    void writeSecretToMemory() throws IOException {
-        JSONObject jsonObject = new JSONObject();
-
-        try {
-            //Creating a map of values to store.
-            FileReader reader = new FileReader(secretStorageFileName);
-            JSONParser jsonParser = new JSONParser();
-
-            try {
-                jsonObject = (JSONObject) jsonParser.parse(reader);
-            } catch (ParseException e) {
-                jsonObject = new JSONObject();
-            }
-
-            reader.close();
-
-        } catch (IOException e) {
-            LOGGER.severe("Error while saving the file to memory." + e.getMessage());
-            new File(secretStorageFileName).createNewFile();
-        }
-
-        OutputStream writer = new FileOutputStream(secretStorageFileName);
-        jsonObject.put("secret", secret.toString());
-        writer.write(jsonObject.toJSONString().getBytes());
-        writer.flush();
-        writer.close();
-    }
 }
@@ -0,0 +1,59 @@
+package com.northeastern.edu.secretSharing;
+
+import java.util.List;
+
+/**
+ * Splits a secret into n keys, any k of which reconstruct it, and
+ * reconstructs it from them. The engines differ in the field the shares are
+ * computed over, and so in the form of their keys.
+ */
+public interface SecretSplitter {
+
+    /**
+     * Field the shares are computed over.
+     */
+    enum Engine {
+        //One share for the whole secret, modulo a 521-bit prime; secrets of up to 65 bytes.
+        PRIME,
+        //One share byte per secret byte, over GF(2^8); secrets of any length.
+        GF256
+    }
+
+    /**
+     * Creates a splitter of the given engine.
+     *
+     * @param engine Field to compute the shares over.
+     * @param n      Number of keys a secret is split into.
+     * @param k      Number of keys that reconstruct it.
+     */
+    static SecretSplitter create(Engine engine, int n, int k) {
+        switch (engine) {
+            case GF256:
+                return new Gf256Splitter(n, k);
+            case PRIME:
+            default:
+                return new PrimeFieldSplitter(n, k);
+        }
+    }
+
+    /**
+     * Splits a secret into the keys for x = 1, 2, ...n.
+     *
+     * @throws IllegalArgumentException If the secret does not fit the field.
+     */
+    List<Key> split(byte[] secret);
+
+    /**
+     * Recovers the secret from k keys of this engine.
+     *
+     * @return The secret, or null if the keys cannot be combined.
+     */
+    byte[] combine(List<Key> keys);
+
+    /**
+     * Reads a key of this engine written by {@link Key#toString()}.
+     *
+     * @return The key, or null if the text is not one.
+     */
+    Key parseKey(String text);
+}
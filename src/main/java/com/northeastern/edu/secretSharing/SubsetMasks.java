@@ -0,0 +1,53 @@
+package com.northeastern.edu.secretSharing;
+
+/**
+ * Bit masks of subsets of the points 1 to n, bit x - 1 standing for x,
+ * which index the basis values the splitters tabulate.
+ */
+final class SubsetMasks {
+
+    private SubsetMasks() {
+    }
+
+    //Mask of k distinct points between 1 and n, or 0 if the points are
+    //not such.
+    static int of(long[] points, int n, int k) {
+        if (points.length != k) {
+            return 0;
+        }
+        int mask = 0;
+        for (long point : points) {
+            if (point < 1 || point > n || (mask & (1 << (point - 1))) != 0) {
+                return 0;
+            }
+            mask |= 1 << (point - 1);
+        }
+        return mask;
+    }
+
+    //Mask of k distinct points between 1 and n, or 0 if the points are
+    //not such.
+    static int of(int[] points, int n, int k) {
+        if (points.length != k) {
+            return 0;
+        }
+        int mask = 0;
+        for (int point : points) {
+            if (point < 1 || point > n || (mask & (1 << (point - 1))) != 0) {
+                return 0;
+            }
+            mask |= 1 << (point - 1);
+        }
+        return mask;
+    }
+
+    //Points of a mask of k bits, in increasing order.
+    static long[] points(int mask, int k) {
+        long[] points = new long[k];
+        int index = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            points[index++] = Integer.numberOfTrailingZeros(bits) + 1;
+        }
+        return points;
+    }
+}
@@ -4,6 +4,7 @@ import com.northeastern.edu.utils.ServerServiceHandler;
 import generated.thrift.impl.CommunicationService;
 import org.apache.thrift.server.TServer;
 import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TServerSocket;
 import org.apache.thrift.transport.TServerTransport;
 import org.apache.thrift.transport.TTransportException;
@@ -102,8 +103,11 @@ public class RPCServer {
         parseArguments(args);
 
         try {
-            //Initialize the client handler.
-            utils = new ServerServiceHandler(serverCommunicationPorts, portNumber);
+            //Initialize the client handler. This loads the newest snapshot
+            //and replays the mutations logged after it.
+            long recoveryStart = System.currentTimeMillis();
+            utils = new ServerServiceHandler(serverCommunicationPorts, portNumber, serverCommunicationPortNumber);
+            formatMessage("Server state recovered in " + (System.currentTimeMillis() - recoveryStart) + "ms");
 
             //Initialize the processor for thrift server.
             processor = new CommunicationService.Processor<>(utils);
@@ -124,14 +128,16 @@ public class RPCServer {
 
     /**
      * Creates a single threaded server, listening on the port specified
-     * for communication between two servers.
+     * for communication between two servers. Messages are framed, as the
+     * replicas send their consensus messages over non-blocking connections.
      *
      * @param protocol Thrift processor to initialize the server.
      */
     private static void threadedServerCommunication(CommunicationService.Processor protocol) {
         try {
             TServerTransport serverTransport = new TServerSocket(serverCommunicationPortNumber);
-            TServer server = new TThreadPoolServer(new TThreadPoolServer.Args(serverTransport).processor(protocol));
+            TServer server = new TThreadPoolServer(new TThreadPoolServer.Args(serverTransport).processor(protocol)
+                    .transportFactory(new TFramedTransport.Factory()));
 
             LOGGER.info("Server-to-Server initialized");
             formatMessage("Server-to-Server initialized");
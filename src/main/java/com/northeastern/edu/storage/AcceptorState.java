@@ -0,0 +1,63 @@
+package com.northeastern.edu.storage;
+
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * State of the acceptor of a consensus group as recorded in the
+ * {@link MutationLog}: the highest ballot it promised, the server it
+ * promised it to, and the values it accepted in the slots not yet
+ * applied. The values are kept as encoded by the consensus group.
+ */
+public final class AcceptorState {
+
+    //Highest ballot promised, and the server it was promised to.
+    private long promised;
+    private int leader;
+
+    //Values accepted, by slot.
+    private final NavigableMap<Long, String> accepted = new TreeMap<>();
+
+    AcceptorState() {
+    }
+
+    AcceptorState(AcceptorState other) {
+        this.promised = other.promised;
+        this.leader = other.leader;
+        this.accepted.putAll(other.accepted);
+    }
+
+    //Highest ballot promised, or 0 if none was.
+    public long getPromised() {
+        return promised;
+    }
+
+    //Server the highest ballot was promised to.
+    public int getLeader() {
+        return leader;
+    }
+
+    //Values accepted in the slots not yet applied, by slot.
+    public NavigableMap<Long, String> getAccepted() {
+        return Collections.unmodifiableNavigableMap(accepted);
+    }
+
+    //Records a promise, unless a higher ballot was promised before.
+    void promise(long ballot, int leader) {
+        if (ballot >= promised) {
+            this.promised = ballot;
+            this.leader = leader;
+        }
+    }
+
+    //Records a value accepted in a slot.
+    void accept(long slot, String value) {
+        accepted.put(slot, value);
+    }
+
+    //Forgets the values of the slots up to an applied one.
+    void forget(long appliedSlot) {
+        accepted.headMap(appliedSlot, true).clear();
+    }
+}
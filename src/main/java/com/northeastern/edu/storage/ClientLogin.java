@@ -0,0 +1,66 @@
+package com.northeastern.edu.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keys issued to a client in its last login, with the digest of the
+ * secret they reconstruct. Each client has its own, so a login never
+ * replaces the secret the keys of another client are checked against.
+ */
+public final class ClientLogin {
+
+    //Separates the digest and the keys in the value of a login. Keys are
+    //written as the index, '=' and a decimal or Base64 value, and digests
+    //in Base64, so none contains it.
+    private static final String SEPARATOR = ",";
+
+    //Separates the salt and the hash of a digest.
+    private static final String DIGEST_MARK = ":";
+
+    //Digest of the secret the keys reconstruct, or an empty string if
+    //none was recorded.
+    private final String digest;
+
+    //Keys issued, in order.
+    private final List<String> keys;
+
+    public ClientLogin(String digest, List<String> keys) {
+        this.digest = digest;
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+    }
+
+    //Digest of the secret the keys reconstruct, or an empty string.
+    public String getDigest() {
+        return digest;
+    }
+
+    //Keys issued, in order.
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Value of a login as logged and decided: the digest followed by the
+     * keys, all in one value so they replace those of the last login
+     * together.
+     */
+    public String toValue() {
+        List<String> parts = new ArrayList<>(keys.size() + 1);
+        parts.add(digest);
+        parts.addAll(keys);
+        return String.join(SEPARATOR, parts);
+    }
+
+    //Reads the value of a login. Logins logged before digests were
+    //recorded hold only keys; a digest holds a ':', which no key does.
+    static ClientLogin fromValue(String value) {
+        List<String> parts = Arrays.asList(value.split(SEPARATOR, -1));
+        if (!parts.get(0).isEmpty() && !parts.get(0).contains(DIGEST_MARK)) {
+            return new ClientLogin("", parts);
+        }
+        return new ClientLogin(parts.get(0), parts.subList(1, parts.size()));
+    }
+}
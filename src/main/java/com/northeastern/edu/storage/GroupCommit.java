@@ -0,0 +1,217 @@
+package com.northeastern.edu.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Makes appended mutations durable according to the configured
+ * {@link Durability}. In batched mode the threads waiting on their
+ * mutations are queued and a single fsync of the log covers all of them.
+ * While one fsync is in progress the next batch builds up in the queue.
+ */
+public class GroupCommit implements Closeable {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(GroupCommit.class.getName());
+
+    /**
+     * How appended mutations are made durable.
+     */
+    public enum Durability {
+        //Mutations are left to the operating system to flush.
+        NONE,
+        //Concurrent mutations share one fsync.
+        BATCHED,
+        //Every mutation is followed by its own fsync.
+        PER_WRITE
+    }
+
+    //Largest number of waiters completed by one fsync.
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    //Number of fsyncs between two logged summaries of the metrics.
+    private static final long METRICS_INTERVAL = 10000;
+
+    //Log made durable by the group commit.
+    private final MutationLog mutationLog;
+
+    //Configured durability.
+    private final Durability durability;
+
+    //Threads waiting on their mutations to become durable.
+    private final LinkedBlockingQueue<Waiter> waiters = new LinkedBlockingQueue<>();
+
+    //Thread issuing the batched fsyncs.
+    private final Thread syncThread;
+
+    //Flag to stop the sync thread.
+    private volatile boolean closed;
+
+    //Metrics of the fsyncs issued.
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong syncedMutations = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalSyncNanos = new AtomicLong();
+    private final AtomicLong maxSyncNanos = new AtomicLong();
+
+    //A thread waiting on its mutation to become durable.
+    private static class Waiter {
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+    }
+
+    public GroupCommit(MutationLog mutationLog, Durability durability) {
+        this.mutationLog = mutationLog;
+        this.durability = durability;
+
+        if (durability == Durability.BATCHED) {
+            syncThread = new Thread(this::syncBatches, "group-commit");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        } else {
+            syncThread = null;
+        }
+    }
+
+    /**
+     * Blocks until the mutations appended by the calling thread are
+     * durable, as far as the configured durability requires.
+     */
+    public void awaitDurable() throws IOException {
+        switch (durability) {
+            case NONE:
+                return;
+            case PER_WRITE:
+                sync(1);
+                return;
+            case BATCHED:
+                Waiter waiter = new Waiter();
+                waiters.add(waiter);
+                if (closed) {
+                    waiter.durable.completeExceptionally(new IOException("Group commit is closed"));
+                }
+
+                try {
+                    waiter.durable.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the log to sync", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Error syncing the log: " + e.getCause().getMessage(), e.getCause());
+                }
+        }
+    }
+
+    //Drains the waiters and completes each batch with one fsync.
+    private void syncBatches() {
+        List<Waiter> batch = new ArrayList<>();
+
+        while (!closed) {
+            try {
+                Waiter first = waiters.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                waiters.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                //Every waiter appended its mutation before queueing,
+                //so the fsync covers the whole batch.
+                sync(batch.size());
+                for (Waiter waiter : batch) {
+                    waiter.durable.complete(null);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                LOGGER.severe("Error syncing the mutation log: " + e.getMessage());
+                for (Waiter waiter : batch) {
+                    waiter.durable.completeExceptionally(e);
+                }
+            }
+
+            batch.clear();
+        }
+
+        //Fail whoever is still waiting.
+        IOException closedException = new IOException("Group commit is closed");
+        for (Waiter waiter : waiters) {
+            waiter.durable.completeExceptionally(closedException);
+        }
+    }
+
+    //Syncs the log and records the metrics of the fsync.
+    private void sync(int batchSize) throws IOException {
+        long start = System.nanoTime();
+        mutationLog.sync();
+        long elapsed = System.nanoTime() - start;
+
+        long count = syncCount.incrementAndGet();
+        syncedMutations.addAndGet(batchSize);
+        maxBatchSize.accumulateAndGet(batchSize, Math::max);
+        totalSyncNanos.addAndGet(elapsed);
+        maxSyncNanos.accumulateAndGet(elapsed, Math::max);
+
+        LOGGER.fine("Synced " + batchSize + " mutations in " + TimeUnit.NANOSECONDS.toMicros(elapsed) + "us");
+        if (count % METRICS_INTERVAL == 0) {
+            LOGGER.info("Group commit: " + this);
+        }
+    }
+
+    //Number of fsyncs issued.
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    //Average number of mutations made durable by one fsync.
+    public double getAverageBatchSize() {
+        long count = syncCount.get();
+        return count == 0 ? 0 : (double) syncedMutations.get() / count;
+    }
+
+    //Largest number of mutations made durable by one fsync.
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    //Average time taken by an fsync, in milliseconds.
+    public double getAverageSyncMillis() {
+        long count = syncCount.get();
+        return count == 0 ? 0 : totalSyncNanos.get() / 1e6 / count;
+    }
+
+    //Longest time taken by an fsync, in milliseconds.
+    public double getMaxSyncMillis() {
+        return maxSyncNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("durability=%s syncs=%d avgBatch=%.1f maxBatch=%d avgSync=%.2fms maxSync=%.2fms",
+                durability, getSyncCount(), getAverageBatchSize(), getMaxBatchSize(),
+                getAverageSyncMillis(), getMaxSyncMillis());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (syncThread != null) {
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        LOGGER.info("Group commit closed: " + this);
+    }
+}
@@ -0,0 +1,51 @@
+package com.northeastern.edu.storage;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps the key-value pairs on the heap in a concurrent hash map.
+ */
+public class HeapKeyValueStore implements KeyValueStore {
+
+    //Key-value pairs stored by the clients.
+    private final ConcurrentMap<String, String> data = new ConcurrentHashMap<>();
+
+    @Override
+    public String get(String key) {
+        return data.get(key);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        data.put(key, value);
+    }
+
+    @Override
+    public void remove(String key) {
+        data.remove(key);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(data.keySet());
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> consumer) {
+        data.forEach(consumer);
+    }
+
+    @Override
+    public void close() {
+        data.clear();
+    }
+}
@@ -0,0 +1,224 @@
+package com.northeastern.edu.storage;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Moves the data, keys and commit sections of a JSON data file into a
+ * snapshot. The file is parsed as a stream of tokens that are encoded as
+ * they arrive, so the sections are never held in memory as a document.
+ *
+ * Once the snapshot is in place the sections are removed from the data
+ * file; other top-level values are kept in it. The keys of a client are
+ * migrated without a digest of their secret, as the file holds a single
+ * secret for all clients, so the client is issued new keys on its next
+ * login.
+ *
+ * Run on its own as {@code JsonMigrator <port>...} to migrate the files
+ * of stopped servers; a server migrates its own file on start. The
+ * snapshot is written for a single partition, and a server configured
+ * with more partitions splits it up on start.
+ */
+public final class JsonMigrator {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(JsonMigrator.class.getName());
+
+    //Names of the sections moved into the snapshot.
+    private static final String DATA = "data";
+    private static final String KEYS = "keys";
+    private static final String COMMIT = "commit";
+
+    private JsonMigrator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JsonMigrator <port>...");
+            System.exit(1);
+        }
+
+        for (String port : args) {
+            File dataFile = new File("data:" + port + ".json");
+            File snapshotFile = new File("data:" + port + ".snapshot");
+            File metadataFile = new File("data:" + port + ".partitions");
+            if (snapshotFile.exists() || metadataFile.exists()) {
+                System.out.println("State of " + port + " already migrated, skipping " + dataFile);
+            } else if (migrate(dataFile, snapshotFile)) {
+                System.out.println("Migrated " + dataFile + " to " + snapshotFile);
+            } else {
+                System.out.println("Nothing to migrate in " + dataFile);
+            }
+        }
+    }
+
+    /**
+     * Writes the sections of a data file to a snapshot covering no mutations,
+     * then removes them from the data file.
+     *
+     * @param dataFile     JSON data file to migrate.
+     * @param snapshotFile Snapshot file to write.
+     * @return Whether a snapshot was written.
+     */
+    public static boolean migrate(File dataFile, File snapshotFile) throws IOException {
+        if (!dataFile.exists()) {
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, Object> remaining = new LinkedHashMap<>();
+
+        long entries;
+        try {
+            entries = Snapshot.write(snapshotFile, 0, encoder -> {
+                try (BufferedReader reader = new BufferedReader(new FileReader(dataFile))) {
+                    new JSONParser().parse(reader, new SectionHandler(encoder, remaining));
+                } catch (ParseException e) {
+                    throw new MalformedDataFileException(e);
+                }
+            });
+        } catch (MalformedDataFileException e) {
+            LOGGER.info("File: " + dataFile + " is empty or not valid JSON, not migrating it: " + e.getMessage());
+            return false;
+        }
+
+        rewrite(dataFile, remaining);
+
+        LOGGER.info("Migrated " + entries + " entries from " + dataFile + " to " + snapshotFile + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    //Replaces the data file with the values that were not migrated.
+    private static void rewrite(File dataFile, Map<String, Object> remaining) throws IOException {
+        File temporary = new File(dataFile.getPath() + ".tmp");
+        try (OutputStream writer = new FileOutputStream(temporary)) {
+            writer.write(JSONObject.toJSONString(remaining).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Files.move(temporary.toPath(), dataFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //Signals that the data file could not be parsed.
+    private static final class MalformedDataFileException extends IOException {
+        MalformedDataFileException(ParseException cause) {
+            super(String.valueOf(cause), cause);
+        }
+    }
+
+    /**
+     * Encodes the entries of the sections as the parser reports them, and
+     * collects the other top-level values.
+     */
+    private static final class SectionHandler implements ContentHandler {
+
+        //Encoder of the snapshot being written.
+        private final SnapshotCodec.Encoder encoder;
+
+        //Top-level values outside the sections.
+        private final Map<String, Object> remaining;
+
+        //Number of objects and arrays the parser is in.
+        private int depth;
+
+        //Name of the current top-level entry, and of the current entry in it.
+        private String section;
+        private String entry;
+
+        //Keys of the current client in the keys section.
+        private List<String> clientKeys;
+
+        SectionHandler(SnapshotCodec.Encoder encoder, Map<String, Object> remaining) {
+            this.encoder = encoder;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            depth++;
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            depth--;
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            if (depth == 1) {
+                section = key;
+            } else if (depth == 2) {
+                entry = key;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            depth++;
+            if (depth == 3 && KEYS.equals(section)) {
+                clientKeys = new ArrayList<>();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean endArray() throws IOException {
+            if (depth == 3 && clientKeys != null) {
+                encoder.clientLogin(entry, new ClientLogin("", clientKeys));
+                clientKeys = null;
+            }
+            depth--;
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object value) throws IOException {
+            if (depth == 1) {
+                remaining.put(section, value);
+            } else if (value == null) {
+                return true;
+            } else if (depth == 2 && DATA.equals(section)) {
+                encoder.data(entry, value.toString());
+            } else if (depth == 2 && COMMIT.equals(section)) {
+                encoder.commitTime(entry, value.toString());
+            } else if (depth == 3 && clientKeys != null) {
+                clientKeys.add(value.toString());
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.northeastern.edu.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds the data section of the server state: the key-value pairs stored
+ * by the clients. Implementations must allow reads concurrent with a single
+ * writer; {@link LocalStore} serializes the writes.
+ *
+ * The mutation log and snapshots remain the durable copy of the data, so
+ * an implementation may start empty on every open.
+ */
+public interface KeyValueStore extends Closeable {
+
+    /**
+     * Where the key-value pairs are kept.
+     */
+    enum Engine {
+        //On the heap, in a concurrent hash map.
+        HEAP,
+        //In memory-mapped segment files, indexed on the heap.
+        MAPPED,
+        //In direct buffers outside the heap, index included.
+        OFF_HEAP
+    }
+
+    /**
+     * Opens a store of the given engine.
+     *
+     * @param engine      Where to keep the pairs.
+     * @param fileName    Name the files of the store are derived from.
+     * @param segmentSize Size of a segment file or slab, for the mapped and off-heap engines.
+     */
+    static KeyValueStore open(Engine engine, String fileName, int segmentSize) throws IOException {
+        switch (engine) {
+            case MAPPED:
+                return new MappedKeyValueStore(fileName, segmentSize);
+            case OFF_HEAP:
+                return new OffHeapKeyValueStore(segmentSize);
+            case HEAP:
+            default:
+                return new HeapKeyValueStore();
+        }
+    }
+
+    //Reads the value stored for a key, or null if there is none.
+    String get(String key);
+
+    //Stores a value for a key, replacing any previous one.
+    void put(String key, String value);
+
+    //Removes a key.
+    void remove(String key);
+
+    //Reads the stored keys.
+    Set<String> keys();
+
+    //Number of stored keys.
+    int size();
+
+    //Hands every stored pair to the consumer.
+    void forEach(BiConsumer<String, String> consumer);
+}
@@ -0,0 +1,694 @@
+package com.northeastern.edu.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Authoritative in-memory copy of the server state. The state is loaded
+ * once when the store is opened and every change is applied in place after
+ * it is appended to a {@link MutationLog}; the files are only read again
+ * on the next start.
+ *
+ * The state is split into hash {@link Partition}s, each with its own log,
+ * snapshot and lock. Keys of the data section are assigned by the hash of
+ * the key, and the keys and commit sections by the hash of the client
+ * address. Partitions are loaded in parallel, and mutations of different
+ * partitions are logged and made durable concurrently.
+ *
+ * The number of partitions is recorded in a metadata file. When the
+ * configured number differs, the state is moved into the new partitions
+ * on start. A single partition uses the file names from before the state
+ * was partitioned, and a data file left from before the log is migrated
+ * into its first snapshot by {@link JsonMigrator}.
+ *
+ * The state is made of three sections:
+ *  data   - the key-value pairs stored by the clients.
+ *  keys   - the secret-sharing keys issued to each client.
+ *  commit - the time the last key was issued to each client.
+ * The acceptor state of each consensus group is logged alongside, in the
+ * partition picked by the number of the group.
+ */
+public class LocalStore implements Closeable {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(LocalStore.class.getName());
+
+    /**
+     * One change of a batch decided in a slot of the consensus log.
+     */
+    public static final class Change {
+
+        //Kind of change.
+        private final Mutation.Operation operation;
+
+        //Keys and values affected.
+        private final Map<String, String> values;
+
+        public Change(Mutation.Operation operation, Map<String, String> values) {
+            this.operation = operation;
+            this.values = values;
+        }
+    }
+
+    //Characters of keys and values a restore applies per change at most,
+    //so a large part is neither held in memory nor logged as one record.
+    private static final int RESTORE_BATCH_CHARS = 1024 * 1024;
+
+    //Name the files of the store are derived from.
+    private final String fileName;
+
+    //Partitions of the state, indexed by hash.
+    private final List<Partition> partitions;
+
+    //Thread taking the periodic snapshots.
+    private ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Opens the partitions of the state, moving the state into the configured
+     * number of partitions first if it is stored in a different number.
+     *
+     * @param fileName       Name the files of the store are derived from.
+     * @param dataFileName   Name of the JSON data file.
+     * @param partitionCount Number of partitions to split the state into.
+     * @param engine         Where the key-value pairs are kept.
+     * @param segmentSize    Size of a segment file of the mapped engine.
+     * @param durability     How changes are made durable before they are acknowledged.
+     */
+    public LocalStore(String fileName, String dataFileName, int partitionCount, KeyValueStore.Engine engine,
+                      int segmentSize, GroupCommit.Durability durability) throws IOException {
+        long start = System.currentTimeMillis();
+        this.fileName = fileName;
+        File metadataFile = new File(fileName + ".partitions");
+        deleteTransferFiles(fileName);
+
+        //Without a metadata file the state is in a single partition,
+        //the first snapshot of which is migrated from the data file.
+        int storedCount = 1;
+        if (metadataFile.exists()) {
+            storedCount = readPartitionCount(metadataFile);
+        } else if (!new File(partitionName(fileName, 0, 1) + ".snapshot").exists()) {
+            JsonMigrator.migrate(new File(dataFileName), new File(partitionName(fileName, 0, 1) + ".snapshot"));
+        }
+
+        if (storedCount != partitionCount) {
+            if (metadataFile.exists() || Partition.exists(partitionName(fileName, 0, 1))) {
+                repartition(fileName, storedCount, partitionCount, engine, segmentSize);
+            }
+        }
+        writePartitionCount(metadataFile, partitionCount);
+
+        this.partitions = Collections.unmodifiableList(inParallel(partitionCount,
+                index -> new Partition(partitionName(fileName, index, partitionCount), engine, segmentSize, durability)));
+
+        LOGGER.info("Loaded " + partitionCount + " partitions in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    //Name the files of a partition are derived from. A single partition
+    //keeps the names used before the state was partitioned.
+    private static String partitionName(String fileName, int index, int partitionCount) {
+        return partitionCount == 1 ? fileName : fileName + ".p" + index + "of" + partitionCount;
+    }
+
+    //Reads the number of partitions the state is stored in.
+    private static int readPartitionCount(File metadataFile) throws IOException {
+        String content = new String(Files.readAllBytes(metadataFile.toPath()), StandardCharsets.UTF_8).trim();
+        try {
+            return Integer.parseInt(content);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid partition count in " + metadataFile + ": " + content, e);
+        }
+    }
+
+    //Deletes the transfer files left by a copy of the state cut short.
+    private static void deleteTransferFiles(String fileName) throws IOException {
+        File base = new File(fileName).getAbsoluteFile();
+        String prefix = base.getName() + ".transfer";
+        File[] files = base.getParentFile().listFiles((directory, name) ->
+                name.startsWith(prefix) && name.endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Creates an empty file next to the files of the store, to hold a copy
+     * of the state too large to keep in memory. The caller deletes it; one
+     * left behind is deleted when the store is next opened.
+     */
+    public File createTransferFile() throws IOException {
+        File base = new File(fileName).getAbsoluteFile();
+        return File.createTempFile(base.getName() + ".transfer", ".tmp", base.getParentFile());
+    }
+
+    //Records the number of partitions the state is stored in.
+    private static void writePartitionCount(File metadataFile, int partitionCount) throws IOException {
+        File temporary = new File(metadataFile.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            stream.write(Integer.toString(partitionCount).getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        }
+
+        Files.move(temporary.toPath(), metadataFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Moves the state from one number of partitions to another. The new
+     * partitions are snapshotted before the metadata file names them, and
+     * the old files are deleted only after, so a crash at any point leaves
+     * one complete copy of the state.
+     */
+    private static void repartition(String fileName, int fromCount, int toCount, KeyValueStore.Engine engine,
+                                    int segmentSize) throws IOException {
+        long start = System.currentTimeMillis();
+
+        //Files of the new partitions can only be left from an earlier attempt.
+        for (int index = 0; index < toCount; index++) {
+            Partition.deleteFiles(partitionName(fileName, index, toCount));
+        }
+
+        List<Partition> from = inParallel(fromCount, index ->
+                new Partition(partitionName(fileName, index, fromCount), engine, segmentSize, GroupCommit.Durability.NONE));
+        List<Partition> to = inParallel(toCount, index ->
+                new Partition(partitionName(fileName, index, toCount), engine, segmentSize, GroupCommit.Durability.NONE));
+
+        try {
+            inParallel(fromCount, index -> {
+                from.get(index).export(
+                        (key, value) -> partitionOf(to, key).restoreData(key, value),
+                        (client, login) -> partitionOf(to, client).restoreClientLogin(client, login),
+                        (client, commitTime) -> partitionOf(to, client).restoreCommitTime(client, commitTime));
+                return null;
+            });
+
+            Set<Integer> groups = new HashSet<>();
+            for (Partition partition : from) {
+                groups.addAll(partition.appliedGroups());
+            }
+            for (Integer group : groups) {
+                long appliedSlot = acceptorPartition(from, group).getAppliedSlot(group);
+                for (Partition partition : to) {
+                    partition.restoreAppliedSlot(group, appliedSlot);
+                }
+            }
+            for (Partition partition : from) {
+                for (Map.Entry<Integer, AcceptorState> acceptor : partition.acceptorStates().entrySet()) {
+                    acceptorPartition(to, acceptor.getKey()).restoreAcceptor(acceptor.getKey(), acceptor.getValue());
+                }
+            }
+
+            inParallel(toCount, index -> {
+                to.get(index).snapshot();
+                return null;
+            });
+        } finally {
+            closeAll(to);
+            closeAll(from);
+        }
+
+        writePartitionCount(new File(fileName + ".partitions"), toCount);
+        for (int index = 0; index < fromCount; index++) {
+            Partition.deleteFiles(partitionName(fileName, index, fromCount));
+        }
+
+        LOGGER.info("Moved the state from " + fromCount + " to " + toCount + " partitions in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    //Task run for each partition.
+    private interface PartitionTask<T> {
+        T run(int index) throws IOException;
+    }
+
+    //Runs a task for each partition on a fork-join pool and returns the results in order.
+    private static <T> List<T> inParallel(int partitionCount, PartitionTask<T> task) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(partitionCount, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Callable<T>> tasks = new ArrayList<>(partitionCount);
+            for (int index = 0; index < partitionCount; index++) {
+                final int partition = index;
+                tasks.add(() -> task.run(partition));
+            }
+
+            List<T> results = new ArrayList<>(partitionCount);
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the partitions", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Closes the partitions, logging failures so every partition gets closed.
+    private static void closeAll(List<Partition> partitions) {
+        for (Partition partition : partitions) {
+            try {
+                partition.close();
+            } catch (IOException e) {
+                LOGGER.severe("Error closing a partition: " + e.getMessage());
+            }
+        }
+    }
+
+    //Partition a key or client address is assigned to. String hash codes
+    //are fixed by the language, so the assignment is stable across restarts.
+    private static Partition partitionOf(List<Partition> partitions, String key) {
+        return partitions.get(Math.floorMod(key.hashCode(), partitions.size()));
+    }
+
+    //Partition the acceptor state of a consensus group is logged in.
+    private static Partition acceptorPartition(List<Partition> partitions, int group) {
+        return partitions.get(Math.floorMod(group, partitions.size()));
+    }
+
+    /**
+     * Takes a snapshot of each partition every interval in which its share
+     * of the given number of mutations was applied to it.
+     *
+     * @param intervalSeconds  Time between two checks.
+     * @param minimumMutations Mutations across all partitions needed to take a snapshot.
+     */
+    public synchronized void scheduleSnapshots(long intervalSeconds, long minimumMutations) {
+        if (snapshotScheduler != null) {
+            return;
+        }
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long minimumPerPartition = Math.max(1, minimumMutations / partitions.size());
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            for (Partition partition : partitions) {
+                try {
+                    partition.snapshotIfDue(minimumPerPartition);
+                } catch (IOException e) {
+                    LOGGER.severe("Error taking a snapshot: " + e.getMessage());
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes a snapshot of every partition and deletes the log segments they cover.
+     */
+    public void snapshot() throws IOException {
+        for (Partition partition : partitions) {
+            partition.snapshot();
+        }
+    }
+
+    //Splits the values of a mutation by the partition of their keys.
+    private Map<Partition, Map<String, String>> split(Map<String, String> values) {
+        Map<Partition, Map<String, String>> split = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            split.computeIfAbsent(partitionOf(partitions, entry.getKey()), partition -> new LinkedHashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        return split;
+    }
+
+    //Logs and applies the part of a mutation belonging to each partition,
+    //then waits for all of them to become durable. The waits happen after
+    //every part is appended so the partitions sync concurrently.
+    private void apply(Mutation.Operation operation, Map<String, String> values) throws IOException {
+        applySlot(0, 0, Collections.singletonList(new Change(operation, values)));
+    }
+
+    /**
+     * Applies the changes decided in a slot of the log of a consensus group,
+     * in order. Each partition appends its part of every change at once and
+     * records the last slot of the group it applied, skipping a slot applied
+     * before, so a slot that is applied again after a restart takes effect
+     * once.
+     *
+     * The partition holding the acceptor state of the group appends its
+     * part, or an empty write if it has none, only once the parts of the
+     * other partitions are durable. Its record of the slot is therefore the
+     * commit marker of the slot: a crash before it leaves the slot not
+     * applied, and applying it again fills in the parts that were lost.
+     *
+     * @param group   Consensus group whose log decided the changes.
+     * @param slot    Slot of the log, or 0 for changes outside the log.
+     * @param changes The changes, in the order they are applied.
+     */
+    public void applySlot(int group, long slot, List<Change> changes) throws IOException {
+        Map<Partition, List<Change>> split = new LinkedHashMap<>();
+        for (Change change : changes) {
+            for (Map.Entry<Partition, Map<String, String>> part : split(change.values).entrySet()) {
+                split.computeIfAbsent(part.getKey(), partition -> new ArrayList<>())
+                        .add(new Change(change.operation, part.getValue()));
+            }
+        }
+        if (slot == 0) {
+            appendDurably(split, group, slot);
+            return;
+        }
+
+        Partition marker = acceptorPartition(partitions, group);
+        List<Change> markerChanges = split.remove(marker);
+        if (markerChanges == null) {
+            markerChanges = Collections.singletonList(new Change(Mutation.Operation.WRITE, Collections.emptyMap()));
+        }
+
+        appendDurably(split, group, slot);
+        appendDurably(Collections.singletonMap(marker, markerChanges), group, slot);
+        marker.forgetAccepted(group, slot);
+    }
+
+    //Appends the part of the changes of a slot belonging to each partition
+    //that did not apply the slot before, then waits for all of them to
+    //become durable.
+    private static void appendDurably(Map<Partition, List<Change>> split, int group, long slot) throws IOException {
+        for (Map.Entry<Partition, List<Change>> entry : split.entrySet()) {
+            Partition partition = entry.getKey();
+            synchronized (partition) {
+                if (slot > 0 && slot <= partition.getAppliedSlot(group)) {
+                    continue;
+                }
+                for (Change change : entry.getValue()) {
+                    partition.append(change.operation, change.values, group, slot);
+                }
+            }
+        }
+
+        for (Partition partition : split.keySet()) {
+            partition.awaitDurable();
+        }
+    }
+
+    /**
+     * Last slot of the log of a consensus group applied to the state, as
+     * recorded by its commit marker. Slots are applied in order and every
+     * part of a slot is durable before its marker is appended, so every
+     * slot up to it has been applied in full. Other partitions may already
+     * hold parts of the next slot.
+     */
+    public long getAppliedSlot(int group) {
+        return acceptorPartition(partitions, group).getAppliedSlot(group);
+    }
+
+    /**
+     * Records the highest ballot the acceptor of a consensus group promised,
+     * and the server it promised it to. The record is durable once
+     * {@link #awaitAcceptor} returns, so the acceptor can record under its
+     * own lock and wait outside of it.
+     */
+    public void promise(int group, long ballot, int leader) throws IOException {
+        acceptorPartition(partitions, group).append(Mutation.Operation.PROMISE,
+                Collections.singletonMap(Long.toString(ballot), Integer.toString(leader)), group, 0);
+    }
+
+    /**
+     * Records a value the acceptor of a consensus group accepted in a slot,
+     * as encoded by the group. The record is durable once
+     * {@link #awaitAcceptor} returns, and forgotten once the slot is applied.
+     */
+    public void accept(int group, long slot, String value) throws IOException {
+        acceptorPartition(partitions, group).append(Mutation.Operation.ACCEPT,
+                Collections.singletonMap(Long.toString(slot), value), group, 0);
+    }
+
+    //Waits for the acceptor state of a consensus group recorded so far to become durable.
+    public void awaitAcceptor(int group) throws IOException {
+        acceptorPartition(partitions, group).awaitDurable();
+    }
+
+    //Acceptor state of a consensus group as recorded, with the values of
+    //the slots not yet applied.
+    public AcceptorState acceptorState(int group) {
+        return acceptorPartition(partitions, group).acceptorState(group, getAppliedSlot(group));
+    }
+
+    /**
+     * Writes the part of the state whose keys and client addresses match,
+     * for a replica too far behind to catch up from the log. The caller
+     * holds off the changes to the matching part while it is written.
+     *
+     * @param include Whether a key or client address belongs to the part.
+     * @param stream  Stream to write to; it is not closed.
+     */
+    public void exportPart(Predicate<String> include, OutputStream stream) throws IOException {
+        SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder(stream, 0);
+        try {
+            for (Partition partition : partitions) {
+                partition.export((key, value) -> {
+                    if (include.test(key)) {
+                        write(() -> encoder.data(key, value));
+                    }
+                }, (clientAddress, login) -> {
+                    if (include.test(clientAddress)) {
+                        write(() -> encoder.clientLogin(clientAddress, login));
+                    }
+                }, (clientAddress, commitTime) -> {
+                    if (include.test(clientAddress)) {
+                        write(() -> encoder.commitTime(clientAddress, commitTime));
+                    }
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        encoder.finish();
+    }
+
+    //Writes an entry from a consumer that cannot throw.
+    private static void write(SnapshotWrite entry) {
+        try {
+            entry.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Entry written to a snapshot stream.
+    private interface SnapshotWrite {
+        void write() throws IOException;
+    }
+
+    /**
+     * Replaces the part of the state whose keys and client addresses match
+     * with one written by {@link #exportPart} on another server, as of a
+     * slot of the log of a consensus group. The file is read twice: once to
+     * check it is whole, so a corrupt one changes nothing, and once to apply
+     * it. The keys and clients of the part are removed first, then the
+     * entries of the file are written in batches of bounded size as they are
+     * read, so the part is never held in memory whole. The keys of a client
+     * and the digest of its secret are issued again as one login, so they
+     * take the time of the restore as their commit time. The slot is
+     * recorded once every change is durable, so a restore cut short is not
+     * taken for a complete one.
+     *
+     * @param include  Whether a key or client address belongs to the part.
+     * @param group    Consensus group the part was exported from.
+     * @param slot     Last slot of the group the part reflects.
+     * @param snapshot File the part was written to.
+     */
+    public void restorePart(Predicate<String> include, int group, long slot, File snapshot) throws IOException {
+        try (InputStream stream = new FileInputStream(snapshot)) {
+            SnapshotCodec.decode(stream, (key, value) -> {}, (clientAddress, login) -> {},
+                    (clientAddress, commitTime) -> {});
+        }
+
+        removePart(include, group);
+
+        RestoreBatch written = new RestoreBatch(group, Mutation.Operation.WRITE);
+        RestoreBatch issued = new RestoreBatch(group, Mutation.Operation.LOGIN);
+        long[] counts = new long[2];
+        try (InputStream stream = new FileInputStream(snapshot)) {
+            SnapshotCodec.decode(stream, (key, value) -> {
+                write(() -> written.add(key, value));
+                counts[0]++;
+            }, (clientAddress, login) -> {
+                write(() -> issued.add(clientAddress, login.toValue()));
+                counts[1]++;
+            }, (clientAddress, commitTime) -> {});
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        written.flush();
+        issued.flush();
+
+        applySlot(group, slot, Collections.emptyList());
+        LOGGER.info("Restored " + counts[0] + " keys and " + counts[1] + " clients of group " + group
+                + " as of slot " + slot);
+    }
+
+    //Removes the keys and clients of a part of the state. Their names are
+    //written to a transfer file first, as the partitions cannot change
+    //while they are read.
+    private void removePart(Predicate<String> include, int group) throws IOException {
+        File names = createTransferFile();
+        try {
+            try (OutputStream stream = new FileOutputStream(names)) {
+                SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder(stream, 0);
+                for (Partition partition : partitions) {
+                    partition.export((key, value) -> {
+                        if (include.test(key)) {
+                            write(() -> encoder.data(key, ""));
+                        }
+                    }, (clientAddress, login) -> {
+                        if (include.test(clientAddress)) {
+                            write(() -> encoder.clientLogin(clientAddress, new ClientLogin("", Collections.emptyList())));
+                        }
+                    }, (clientAddress, commitTime) -> {});
+                }
+                encoder.finish();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            RestoreBatch deleted = new RestoreBatch(group, Mutation.Operation.DELETE);
+            RestoreBatch revoked = new RestoreBatch(group, Mutation.Operation.REVOKE);
+            try (InputStream stream = new FileInputStream(names)) {
+                SnapshotCodec.decode(stream, (key, value) -> write(() -> deleted.add(key, null)),
+                        (clientAddress, login) -> write(() -> revoked.add(clientAddress, null)),
+                        (clientAddress, commitTime) -> {});
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            deleted.flush();
+            revoked.flush();
+        } finally {
+            Files.deleteIfExists(names.toPath());
+        }
+    }
+
+    /**
+     * Changes of one kind made by a restore, applied outside the log of
+     * the group once they reach {@link #RESTORE_BATCH_CHARS}.
+     */
+    private final class RestoreBatch {
+
+        //Consensus group restored, and the kind of change.
+        private final int group;
+        private final Mutation.Operation operation;
+
+        //Keys and values not yet applied, and their number of characters.
+        private Map<String, String> values = new LinkedHashMap<>();
+        private long chars;
+
+        RestoreBatch(int group, Mutation.Operation operation) {
+            this.group = group;
+            this.operation = operation;
+        }
+
+        //Adds a change, applying the changes added so far once they are large enough.
+        void add(String key, String value) throws IOException {
+            values.put(key, value);
+            chars += key.length() + (value == null ? 0 : value.length());
+            if (chars >= RESTORE_BATCH_CHARS) {
+                flush();
+            }
+        }
+
+        //Applies the changes added so far.
+        void flush() throws IOException {
+            if (values.isEmpty()) {
+                return;
+            }
+            applySlot(group, 0, Collections.singletonList(new Change(operation, values)));
+            values = new LinkedHashMap<>();
+            chars = 0;
+        }
+    }
+
+    //Reads the value stored for a key, or null if there is none.
+    public String get(String key) {
+        return partitionOf(partitions, key).get(key);
+    }
+
+    //Reads a copy of the stored keys.
+    public Set<String> keys() {
+        Set<String> keys = new HashSet<>();
+        for (Partition partition : partitions) {
+            keys.addAll(partition.keys());
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    //Reads the keys issued to a client in its last login and the digest
+    //of their secret, or null if there are none.
+    public ClientLogin getClientLogin(String clientAddress) {
+        return partitionOf(partitions, clientAddress).getClientLogin(clientAddress);
+    }
+
+    //Reads the time the last key was issued to a client, or null.
+    public String getCommitTime(String clientAddress) {
+        return partitionOf(partitions, clientAddress).getCommitTime(clientAddress);
+    }
+
+    //Stores the key-value pairs.
+    public void write(Map<String, String> keyValue) throws IOException {
+        apply(Mutation.Operation.WRITE, keyValue);
+    }
+
+    //Removes the keys.
+    public void delete(Collection<String> keysToDelete) throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String key : keysToDelete) {
+            values.put(key, null);
+        }
+
+        apply(Mutation.Operation.DELETE, values);
+    }
+
+    //Issues keys to a client, replacing those issued before.
+    public void login(String clientAddress, ClientLogin login) throws IOException {
+        apply(Mutation.Operation.LOGIN, Collections.singletonMap(clientAddress, login.toValue()));
+    }
+
+    //Removes the keys issued to a client.
+    public void revoke(String clientAddress) throws IOException {
+        apply(Mutation.Operation.REVOKE, Collections.singletonMap(clientAddress, null));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+
+        closeAll(partitions);
+    }
+}
@@ -0,0 +1,263 @@
+package com.northeastern.edu.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the key-value pairs in fixed-size segment files mapped into memory,
+ * so the values live in the page cache rather than on the heap. Only the
+ * index from each key to the location of its record is kept on the heap.
+ *
+ * Records are appended to the newest segment as:
+ * <pre>
+ *     int   length of the key
+ *     int   length of the value
+ *     UTF-8 key bytes
+ *     UTF-8 value bytes
+ * </pre>
+ * Records are never changed in place. A replaced or removed record becomes
+ * garbage, and the live records are copied to new segments once garbage
+ * makes up most of the segments. Reads decode the value straight from the
+ * mapped segment and take no lock.
+ *
+ * The segments hold no state of their own across restarts: they are
+ * deleted on open and refilled from the snapshot and the mutation log.
+ */
+public class MappedKeyValueStore implements KeyValueStore {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(MappedKeyValueStore.class.getName());
+
+    //Size of the length fields preceding each record.
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    //Share of garbage in the segments that triggers a compaction.
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    //Name the segment files are derived from.
+    private final String fileName;
+
+    //Size of a segment file.
+    private final int segmentSize;
+
+    //Mapped segments by number.
+    private final ConcurrentMap<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    //Location of the record of each key: the segment number in the
+    //high 32 bits and the offset in the segment in the low 32 bits.
+    private final ConcurrentMap<String, Long> index = new ConcurrentHashMap<>();
+
+    //Segment records are appended to, its number and the offset of its free space.
+    private MappedByteBuffer activeSegment;
+    private int activeSegmentNumber;
+    private int position;
+
+    //Bytes taken up by all records, and by the records still in the index.
+    private long totalBytes;
+    private long liveBytes;
+
+    /**
+     * Creates an empty store, deleting any segments left from a previous run.
+     *
+     * @param fileName    Name the segment files are derived from.
+     * @param segmentSize Size of a segment file.
+     */
+    public MappedKeyValueStore(String fileName, int segmentSize) throws IOException {
+        this.fileName = fileName;
+        this.segmentSize = segmentSize;
+
+        deleteSegmentFiles();
+        startSegment(segmentSize);
+    }
+
+    //Deletes the segment files on disk.
+    private void deleteSegmentFiles() throws IOException {
+        File base = new File(fileName).getAbsoluteFile();
+        String prefix = base.getName() + ".";
+
+        File[] files = base.getParentFile().listFiles((directory, name) -> name.startsWith(prefix));
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    //Maps a new segment of at least the given size and makes it active.
+    private void startSegment(int size) throws IOException {
+        int number = activeSegment == null ? 1 : activeSegmentNumber + 1;
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName + "." + number, "rw")) {
+            file.setLength(size);
+            activeSegment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        activeSegmentNumber = number;
+        position = 0;
+        segments.put(number, activeSegment);
+    }
+
+    //Appends a record and returns its location.
+    private long append(byte[] key, byte[] value) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + key.length + value.length;
+        if (position + recordSize > activeSegment.capacity()) {
+            startSegment(Math.max(segmentSize, recordSize));
+        }
+
+        ByteBuffer view = activeSegment.duplicate();
+        view.position(position);
+        view.putInt(key.length);
+        view.putInt(value.length);
+        view.put(key);
+        view.put(value);
+
+        long location = ((long) activeSegmentNumber << 32) | position;
+        position += recordSize;
+        totalBytes += recordSize;
+        liveBytes += recordSize;
+        return location;
+    }
+
+    //Size of the record at a location.
+    private int recordSize(long location) {
+        MappedByteBuffer segment = segments.get((int) (location >>> 32));
+        int offset = (int) location;
+        return RECORD_HEADER_SIZE + segment.getInt(offset) + segment.getInt(offset + 4);
+    }
+
+    //Reads the key or value bytes of the record at a location.
+    private static byte[] readBytes(MappedByteBuffer segment, int offset, boolean value) {
+        int keyLength = segment.getInt(offset);
+        int length = value ? segment.getInt(offset + 4) : keyLength;
+
+        ByteBuffer view = segment.duplicate();
+        view.position(offset + RECORD_HEADER_SIZE + (value ? keyLength : 0));
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String get(String key) {
+        while (true) {
+            Long location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+
+            MappedByteBuffer segment = segments.get((int) (location >>> 32));
+            if (segment == null) {
+                //The segment was compacted away after the index was read;
+                //the index now points at the copy of the record.
+                continue;
+            }
+
+            int offset = (int) (long) location;
+            int keyLength = segment.getInt(offset);
+            int valueLength = segment.getInt(offset + 4);
+
+            ByteBuffer view = segment.duplicate();
+            int start = offset + RECORD_HEADER_SIZE + keyLength;
+            view.limit(start + valueLength);
+            view.position(start);
+            return StandardCharsets.UTF_8.decode(view).toString();
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, String value) {
+        try {
+            long location = append(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+            Long previous = index.put(key, location);
+            if (previous != null) {
+                liveBytes -= recordSize(previous);
+            }
+
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing to " + fileName, e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        Long previous = index.remove(key);
+        if (previous != null) {
+            liveBytes -= recordSize(previous);
+        }
+    }
+
+    //Copies the live records to new segments once most of the segments are garbage.
+    private void compactIfNeeded() throws IOException {
+        if (totalBytes < segmentSize || liveBytes > totalBytes * (1 - COMPACTION_THRESHOLD)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Integer> oldSegments = new ArrayList<>(segments.keySet());
+
+        totalBytes = 0;
+        liveBytes = 0;
+        startSegment(segmentSize);
+
+        for (Map.Entry<String, Long> entry : index.entrySet()) {
+            long location = entry.getValue();
+            MappedByteBuffer segment = segments.get((int) (location >>> 32));
+            int offset = (int) location;
+
+            entry.setValue(append(readBytes(segment, offset, false), readBytes(segment, offset, true)));
+        }
+
+        //Readers still holding an old segment keep it mapped until they are done.
+        for (Integer number : oldSegments) {
+            segments.remove(number);
+            Files.deleteIfExists(new File(fileName + "." + number).toPath());
+        }
+
+        LOGGER.info("Compacted " + index.size() + " keys into " + segments.size() + " segments in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Override
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> consumer) {
+        for (String key : index.keySet()) {
+            String value = get(key);
+            if (value != null) {
+                consumer.accept(key, value);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.clear();
+        segments.clear();
+        deleteSegmentFiles();
+    }
+}
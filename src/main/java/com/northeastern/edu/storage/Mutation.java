@@ -0,0 +1,111 @@
+package com.northeastern.edu.storage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents a single change to the server state as it is recorded
+ * in the {@link MutationLog}.
+ */
+public class Mutation {
+
+    /**
+     * Kind of change recorded by a mutation. The codes are written
+     * to disk and must never be re-used.
+     */
+    public enum Operation {
+        //Key-value pairs added to or updated in the data store.
+        WRITE(1),
+        //Keys removed from the data store.
+        DELETE(2),
+        //Secret-sharing keys issued to a client in one login, replacing
+        //those issued before.
+        LOGIN(3),
+        //Secret-sharing keys of a client removed.
+        REVOKE(4),
+        //Ballot promised by the acceptor of a consensus group.
+        PROMISE(5),
+        //Value accepted by the acceptor of a consensus group in a slot.
+        ACCEPT(6);
+
+        private final byte code;
+
+        Operation(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public static Operation fromCode(byte code) {
+            for (Operation operation : values()) {
+                if (operation.code == code) {
+                    return operation;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown mutation operation code: " + code);
+        }
+    }
+
+    //Position of the mutation in the log.
+    private final long sequence;
+
+    //Kind of change.
+    private final Operation operation;
+
+    //Time (epoch millis) the mutation was recorded.
+    private final long timestamp;
+
+    //Keys and values affected by the mutation.
+    private final Map<String, String> values;
+
+    //Consensus group, and slot of its log the mutation was decided in, or 0.
+    private final int group;
+    private final long slot;
+
+    public Mutation(long sequence, Operation operation, long timestamp, Map<String, String> values) {
+        this(sequence, operation, timestamp, values, 0, 0);
+    }
+
+    public Mutation(long sequence, Operation operation, long timestamp, Map<String, String> values,
+                    int group, long slot) {
+        this.sequence = sequence;
+        this.operation = operation;
+        this.timestamp = timestamp;
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.group = group;
+        this.slot = slot;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + ":" + operation + values;
+    }
+}
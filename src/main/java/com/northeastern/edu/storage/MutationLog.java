@@ -0,0 +1,398 @@
+package com.northeastern.edu.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the mutations applied to the server state.
+ *
+ * The log is a sequence of segment files named {@code <name>.<number>}. Records
+ * are appended to the newest segment; {@link #roll()} starts a new one so that
+ * the older segments can be deleted once a snapshot covers them.
+ *
+ * Every record is written as:
+ * <pre>
+ *     int     length of the body
+ *     int     CRC32 of the body
+ *     body:
+ *       long  sequence number
+ *       byte  operation code
+ *       long  timestamp (epoch millis)
+ *       int   consensus group of the slot
+ *       long  slot of the consensus log, or 0
+ *       int   number of entries
+ *       entries of (int length, UTF-8 key bytes, int length, UTF-8 value bytes)
+ * </pre>
+ * A length of -1 represents a null value. A record that is cut short or fails
+ * its checksum marks the end of the log; it is dropped when the log is opened.
+ */
+public class MutationLog implements Closeable {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(MutationLog.class.getName());
+
+    //Size of the length and checksum fields preceding each body.
+    private static final int HEADER_SIZE = 8;
+
+    //Size of the fixed part of a body.
+    private static final int BODY_HEADER_SIZE = 8 + 1 + 8 + 4 + 8 + 4;
+
+    //Upper bound on a single record, used to detect garbage lengths. A
+    //larger record is refused when appended, as it could not be read back.
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    //Name of the log the segment names are derived from.
+    private final String fileName;
+
+    //Numbers of the segments on disk, oldest first. The last one is active.
+    private final List<Integer> segments = new ArrayList<>();
+
+    //Channel used for appending records to the active segment.
+    private FileChannel channel;
+
+    //Sequence number of the next record to append.
+    private long nextSequence = 1;
+
+    //Error of an append whose partial record could not be removed, after
+    //which no record is appended, or null.
+    private IOException failure;
+
+    /**
+     * Opens the log, creating it if it does not exist. Any torn or
+     * corrupt record at the end of the active segment is truncated.
+     * The older segments are only read by {@link #replay}, which numbers
+     * the records appended next after every record in the log, so it is
+     * called before the first append.
+     *
+     * @param fileName Name of the log.
+     */
+    public MutationLog(String fileName) throws IOException {
+        this.fileName = fileName;
+
+        findSegments();
+        if (segments.isEmpty()) {
+            segments.add(1);
+        }
+
+        //Only the active segment can end in a torn record; the
+        //others were synced before the log was rolled.
+        File active = segmentFile(activeSegment());
+        long validLength = readSegment(active, mutation -> {});
+
+        this.channel = new RandomAccessFile(active, "rw").getChannel();
+        if (validLength < channel.size()) {
+            LOGGER.warning("Truncating " + (channel.size() - validLength)
+                    + " bytes of incomplete records from " + active);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    //Finds the segments of the log on disk.
+    private void findSegments() {
+        File log = new File(fileName).getAbsoluteFile();
+        File directory = log.getParentFile();
+        String prefix = log.getName() + ".";
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix)) {
+                    try {
+                        segments.add(Integer.parseInt(file.getName().substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        //Not a segment of this log.
+                    }
+                }
+            }
+        }
+
+        Collections.sort(segments);
+    }
+
+    //File holding the given segment.
+    private File segmentFile(int segment) {
+        return new File(fileName + "." + segment);
+    }
+
+    //Number of the segment records are appended to.
+    private int activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Appends a mutation to the log.
+     *
+     * @param operation The kind of change.
+     * @param values    The keys and values affected.
+     * @return The mutation as recorded.
+     */
+    public Mutation append(Mutation.Operation operation, Map<String, String> values) throws IOException {
+        return append(operation, values, 0, 0);
+    }
+
+    /**
+     * Appends a mutation decided in a slot of the log of a consensus group.
+     *
+     * @param operation The kind of change.
+     * @param values    The keys and values affected.
+     * @param group     The consensus group.
+     * @param slot      The slot, or 0 if the mutation is not part of a log.
+     * @return The mutation as recorded.
+     */
+    public synchronized Mutation append(Mutation.Operation operation, Map<String, String> values,
+                                        int group, long slot) throws IOException {
+        if (failure != null) {
+            throw new IOException("Log " + fileName + " refuses appends after a failed one", failure);
+        }
+        Mutation mutation = new Mutation(nextSequence, operation, System.currentTimeMillis(), values, group, slot);
+        ByteBuffer record = encode(mutation);
+
+        //A record written in part is removed, or the records appended
+        //after it would be dropped with it when the log is next opened.
+        long position = channel.position();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(position);
+                channel.position(position);
+            } catch (IOException truncateError) {
+                LOGGER.severe("Error removing a partial record from " + segmentFile(activeSegment()) + ": "
+                        + truncateError.getMessage());
+                failure = e;
+            }
+            throw e;
+        }
+        nextSequence++;
+        return mutation;
+    }
+
+    /**
+     * Forces the appended records to disk. Appends may continue
+     * while the sync is in progress.
+     */
+    public void sync() throws IOException {
+        FileChannel active;
+        synchronized (this) {
+            active = channel;
+        }
+
+        try {
+            active.force(false);
+        } catch (ClosedChannelException e) {
+            //The segment was rolled, which forces it before closing it.
+        }
+    }
+
+    /**
+     * Syncs the active segment and starts a new one.
+     *
+     * @return The number of the new active segment.
+     */
+    public synchronized int roll() throws IOException {
+        channel.force(false);
+        channel.close();
+
+        int segment = activeSegment() + 1;
+        segments.add(segment);
+        channel = new RandomAccessFile(segmentFile(segment), "rw").getChannel();
+        return segment;
+    }
+
+    /**
+     * Deletes the segments older than the given one.
+     *
+     * @param segment Number of the oldest segment to keep.
+     */
+    public synchronized void deleteSegmentsBefore(int segment) throws IOException {
+        Iterator<Integer> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            int current = iterator.next();
+            if (current < segment && current != activeSegment()) {
+                Files.deleteIfExists(segmentFile(current).toPath());
+                iterator.remove();
+            }
+        }
+    }
+
+    //Sequence number of the last mutation appended.
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Makes sure the next mutation appended is numbered after the
+     * given one, for when older segments have been deleted.
+     *
+     * @param sequence Sequence number already used.
+     */
+    public synchronized void skipPast(long sequence) {
+        nextSequence = Math.max(nextSequence, sequence + 1);
+    }
+
+    /**
+     * Reads every valid record in the log from the oldest segment and
+     * hands it to the consumer in the order it was written.
+     *
+     * @param consumer Receiver of the mutations.
+     */
+    public synchronized void replay(Consumer<Mutation> consumer) throws IOException {
+        for (Integer segment : segments) {
+            readSegment(segmentFile(segment), consumer);
+        }
+    }
+
+    //Reads the valid records of a segment and returns the length they take up.
+    private long readSegment(File segment, Consumer<Mutation> consumer) throws IOException {
+        long validLength = 0;
+        if (!segment.exists()) {
+            return validLength;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length < BODY_HEADER_SIZE || length > MAX_RECORD_SIZE) {
+                    LOGGER.warning("Invalid record length " + length + " at offset " + validLength + " of " + segment);
+                    break;
+                }
+
+                byte[] body = new byte[length];
+                int checksum;
+                try {
+                    checksum = input.readInt();
+                    input.readFully(body);
+                } catch (EOFException e) {
+                    LOGGER.warning("Incomplete record at offset " + validLength + " of " + segment);
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, body.length);
+                if ((int) crc.getValue() != checksum) {
+                    LOGGER.warning("Checksum mismatch at offset " + validLength + " of " + segment);
+                    break;
+                }
+
+                Mutation mutation = decode(ByteBuffer.wrap(body));
+                nextSequence = Math.max(nextSequence, mutation.getSequence() + 1);
+                consumer.accept(mutation);
+                validLength += HEADER_SIZE + length;
+            }
+        }
+
+        return validLength;
+    }
+
+    //Serializes a mutation into a length-prefixed, checksummed record.
+    private static ByteBuffer encode(Mutation mutation) throws IOException {
+        int count = mutation.getValues().size();
+        byte[][] keys = new byte[count][];
+        byte[][] values = new byte[count][];
+
+        long length = BODY_HEADER_SIZE;
+        int index = 0;
+        for (Map.Entry<String, String> entry : mutation.getValues().entrySet()) {
+            keys[index] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            values[index] = entry.getValue() == null ? null : entry.getValue().getBytes(StandardCharsets.UTF_8);
+            length += 8 + keys[index].length + (values[index] == null ? 0 : values[index].length);
+            if (length > MAX_RECORD_SIZE) {
+                throw new IOException("Mutation of " + count + " values exceeds the record size limit of "
+                        + MAX_RECORD_SIZE + " bytes");
+            }
+            index++;
+        }
+        int bodyLength = (int) length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+        buffer.putLong(mutation.getSequence());
+        buffer.put(mutation.getOperation().getCode());
+        buffer.putLong(mutation.getTimestamp());
+        buffer.putInt(mutation.getGroup());
+        buffer.putLong(mutation.getSlot());
+        buffer.putInt(count);
+        for (index = 0; index < count; index++) {
+            buffer.putInt(keys[index].length);
+            buffer.put(keys[index]);
+            if (values[index] == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(values[index].length);
+                buffer.put(values[index]);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+
+        buffer.flip();
+        return buffer;
+    }
+
+    //Deserializes the body of a record.
+    private static Mutation decode(ByteBuffer body) {
+        long sequence = body.getLong();
+        Mutation.Operation operation = Mutation.Operation.fromCode(body.get());
+        long timestamp = body.getLong();
+        int group = body.getInt();
+        long slot = body.getLong();
+        int count = body.getInt();
+
+        Map<String, String> values = new HashMap<>();
+        for (int index = 0; index < count; index++) {
+            String key = readString(body);
+            values.put(key, readString(body));
+        }
+
+        return new Mutation(sequence, operation, timestamp, values, group, slot);
+    }
+
+    //Reads a length-prefixed UTF-8 string.
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
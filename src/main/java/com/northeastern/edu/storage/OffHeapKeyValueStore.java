@@ -0,0 +1,499 @@
+package com.northeastern.edu.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the key-value pairs and their index in direct buffers outside the
+ * heap, so the heap does not grow with the number of keys and the garbage
+ * collector never has to trace them.
+ *
+ * Records are appended to slabs, direct buffers of a fixed size, as:
+ * <pre>
+ *     int   length of the key
+ *     int   length of the value
+ *     UTF-8 key bytes
+ *     UTF-8 value bytes
+ * </pre>
+ * A replaced or removed record becomes garbage. Once garbage makes up most
+ * of a slab, its live records are copied to the newest slab and the slab
+ * is reused.
+ *
+ * The index is an open-addressing hash table with linear probing, held in
+ * a direct buffer of slots of:
+ * <pre>
+ *     int   hash of the key
+ *     long  slab number plus one in the high 32 bits and the offset of the
+ *           record in the low 32 bits; 0 for an empty slot and -1 for a
+ *           removed one
+ * </pre>
+ * Reads share a read lock; writes and compaction take the write lock.
+ */
+public class OffHeapKeyValueStore implements KeyValueStore {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(OffHeapKeyValueStore.class.getName());
+
+    //Size of the length fields preceding each record.
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    //Size of a slot of the index.
+    private static final int SLOT_SIZE = 12;
+
+    //Markers of an empty and of a removed slot.
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+
+    //Slots of the index in use, including removed ones, before it is resized.
+    private static final double MAX_LOAD = 0.5;
+
+    //Number of slots of a new index.
+    private static final int INITIAL_CAPACITY = 1024;
+
+    //Share of garbage in a slab that triggers its compaction.
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    //Number of emptied slabs kept for reuse.
+    private static final int SPARE_SLABS = 2;
+
+    //Size of a slab.
+    private final int slabSize;
+
+    //Guards the index and the slabs.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //Slabs by number; null for numbers not in use.
+    private ByteBuffer[] slabs = new ByteBuffer[8];
+
+    //Bytes appended to each slab, and bytes of its records still in the index.
+    private int[] slabUsed = new int[8];
+    private int[] slabLive = new int[8];
+
+    //Emptied slabs kept for reuse.
+    private final Deque<ByteBuffer> spareSlabs = new ArrayDeque<>();
+
+    //Number of the slab records are appended to.
+    private int activeSlab = -1;
+
+    //Slots of the index.
+    private ByteBuffer index;
+    private int capacity;
+
+    //Keys in the index, and slots in use including removed ones.
+    private int size;
+    private int usedSlots;
+
+    //Number of iterations in progress; slabs are not compacted while one
+    //runs, as it reads records outside the lock.
+    private final AtomicInteger iterations = new AtomicInteger();
+
+    /**
+     * Creates an empty store.
+     *
+     * @param slabSize Size of a slab.
+     */
+    public OffHeapKeyValueStore(int slabSize) {
+        this.slabSize = slabSize;
+        this.capacity = INITIAL_CAPACITY;
+        this.index = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    }
+
+    //Hash of the UTF-8 bytes of a key, spread over the high and low bits.
+    private static int hash(byte[] key) {
+        int hash = 1;
+        for (byte value : key) {
+            hash = 31 * hash + value;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    //Location of a record in a slab.
+    private static long location(int slab, int offset) {
+        return ((long) (slab + 1) << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int slabOf(long location) {
+        return (int) (location >>> 32) - 1;
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private long slotLocation(int slot) {
+        return index.getLong(slot * SLOT_SIZE + 4);
+    }
+
+    private int slotHash(int slot) {
+        return index.getInt(slot * SLOT_SIZE);
+    }
+
+    private void setSlot(int slot, int hash, long location) {
+        index.putInt(slot * SLOT_SIZE, hash);
+        index.putLong(slot * SLOT_SIZE + 4, location);
+    }
+
+    //Size of the record at a location.
+    private int recordSize(long location) {
+        ByteBuffer slab = slabs[slabOf(location)];
+        int offset = offsetOf(location);
+        return RECORD_HEADER_SIZE + slab.getInt(offset) + slab.getInt(offset + 4);
+    }
+
+    //Whether the record at a location holds the key.
+    private boolean keyEquals(long location, byte[] key) {
+        ByteBuffer slab = slabs[slabOf(location)];
+        int offset = offsetOf(location);
+        if (slab.getInt(offset) != key.length) {
+            return false;
+        }
+
+        int start = offset + RECORD_HEADER_SIZE;
+        for (int position = 0; position < key.length; position++) {
+            if (slab.get(start + position) != key[position]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Reads the key or the value of the record at a location.
+    private static String readString(ByteBuffer[] slabs, long location, boolean value) {
+        ByteBuffer slab = slabs[slabOf(location)];
+        int offset = offsetOf(location);
+        int keyLength = slab.getInt(offset);
+        int length = value ? slab.getInt(offset + 4) : keyLength;
+
+        ByteBuffer view = slab.duplicate();
+        int start = offset + RECORD_HEADER_SIZE + (value ? keyLength : 0);
+        view.limit(start + length);
+        view.position(start);
+        return StandardCharsets.UTF_8.decode(view).toString();
+    }
+
+    //Finds the slot of a key, or returns the complement of the slot to
+    //insert it into if it is not in the index.
+    private int find(byte[] key, int hash) {
+        int mask = capacity - 1;
+        int insertAt = -1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long location = slotLocation(slot);
+            if (location == EMPTY) {
+                return ~(insertAt >= 0 ? insertAt : slot);
+            } else if (location == REMOVED) {
+                if (insertAt < 0) {
+                    insertAt = slot;
+                }
+            } else if (slotHash(slot) == hash && keyEquals(location, key)) {
+                return slot;
+            }
+        }
+    }
+
+    //Moves the slots into a new index with room for one more key, dropping removed slots.
+    private void resize() {
+        int newCapacity = capacity;
+        while (size + 1 > newCapacity * MAX_LOAD / 2) {
+            newCapacity *= 2;
+        }
+
+        ByteBuffer oldIndex = index;
+        int oldCapacity = capacity;
+        index = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE);
+        capacity = newCapacity;
+        usedSlots = size;
+
+        int mask = newCapacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            long location = oldIndex.getLong(oldSlot * SLOT_SIZE + 4);
+            if (location == EMPTY || location == REMOVED) {
+                continue;
+            }
+
+            int hash = oldIndex.getInt(oldSlot * SLOT_SIZE);
+            int slot = hash & mask;
+            while (slotLocation(slot) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            setSlot(slot, hash, location);
+        }
+    }
+
+    //Makes a new slab of at least the given size active.
+    private void startSlab(int size) {
+        int number = 0;
+        while (number < slabs.length && slabs[number] != null) {
+            number++;
+        }
+        if (number == slabs.length) {
+            int length = slabs.length * 2;
+            ByteBuffer[] grownSlabs = new ByteBuffer[length];
+            System.arraycopy(slabs, 0, grownSlabs, 0, slabs.length);
+            slabs = grownSlabs;
+            slabUsed = Arrays.copyOf(slabUsed, length);
+            slabLive = Arrays.copyOf(slabLive, length);
+        }
+
+        ByteBuffer slab = size <= slabSize && !spareSlabs.isEmpty()
+                ? spareSlabs.pop() : ByteBuffer.allocateDirect(Math.max(slabSize, size));
+        slabs[number] = slab;
+        slabUsed[number] = 0;
+        slabLive[number] = 0;
+        activeSlab = number;
+    }
+
+    //Appends a record and returns its location.
+    private long append(byte[] key, byte[] value) {
+        int recordSize = RECORD_HEADER_SIZE + key.length + value.length;
+        if (activeSlab < 0 || slabUsed[activeSlab] + recordSize > slabs[activeSlab].capacity()) {
+            startSlab(recordSize);
+        }
+
+        ByteBuffer slab = slabs[activeSlab];
+        int offset = slabUsed[activeSlab];
+        slab.putInt(offset, key.length);
+        slab.putInt(offset + 4, value.length);
+        for (int position = 0; position < key.length; position++) {
+            slab.put(offset + RECORD_HEADER_SIZE + position, key[position]);
+        }
+        for (int position = 0; position < value.length; position++) {
+            slab.put(offset + RECORD_HEADER_SIZE + key.length + position, value[position]);
+        }
+
+        slabUsed[activeSlab] += recordSize;
+        slabLive[activeSlab] += recordSize;
+        return location(activeSlab, offset);
+    }
+
+    //Marks the record at a location as garbage and compacts its slab if
+    //it is mostly garbage.
+    private void release(long location) {
+        int slab = slabOf(location);
+        slabLive[slab] -= recordSize(location);
+        compactIfNeeded(slab);
+    }
+
+    //Copies the live records of a slab to the active slab once most of it
+    //is garbage, and keeps the emptied slab for reuse.
+    private void compactIfNeeded(int slab) {
+        if (slab == activeSlab || slabs[slab] == null || iterations.get() > 0
+                || slabLive[slab] > slabUsed[slab] * (1 - COMPACTION_THRESHOLD)) {
+            return;
+        }
+
+        ByteBuffer buffer = slabs[slab];
+        int offset = 0;
+        while (slabLive[slab] > 0 && offset < slabUsed[slab]) {
+            int keyLength = buffer.getInt(offset);
+            int recordSize = RECORD_HEADER_SIZE + keyLength + buffer.getInt(offset + 4);
+            long location = location(slab, offset);
+
+            byte[] key = new byte[keyLength];
+            for (int position = 0; position < keyLength; position++) {
+                key[position] = buffer.get(offset + RECORD_HEADER_SIZE + position);
+            }
+
+            int hash = hash(key);
+            int slot = find(key, hash);
+            if (slot >= 0 && slotLocation(slot) == location) {
+                byte[] value = new byte[recordSize - RECORD_HEADER_SIZE - keyLength];
+                for (int position = 0; position < value.length; position++) {
+                    value[position] = buffer.get(offset + RECORD_HEADER_SIZE + keyLength + position);
+                }
+
+                setSlot(slot, hash, append(key, value));
+                slabLive[slab] -= recordSize;
+            }
+
+            offset += recordSize;
+        }
+
+        slabs[slab] = null;
+        if (buffer.capacity() == slabSize && spareSlabs.size() < SPARE_SLABS) {
+            spareSlabs.push(buffer);
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+
+        lock.readLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            return slot < 0 ? null : readString(slabs, slotLocation(slot), true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            long location = append(keyBytes, valueBytes);
+
+            if (slot >= 0) {
+                long previous = slotLocation(slot);
+                setSlot(slot, hash, location);
+                release(previous);
+                return;
+            }
+
+            slot = ~slot;
+            if (slotLocation(slot) == EMPTY && usedSlots + 1 > capacity * MAX_LOAD) {
+                resize();
+                slot = ~find(keyBytes, hash);
+            }
+            if (slotLocation(slot) == EMPTY) {
+                usedSlots++;
+            }
+            setSlot(slot, hash, location);
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot >= 0) {
+                long previous = slotLocation(slot);
+                setSlot(slot, hash, REMOVED);
+                size--;
+                release(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> keys() {
+        Set<String> keys = new HashSet<>();
+        forEachLocation((slabs, location) -> keys.add(readString(slabs, location, false)));
+        return Collections.unmodifiableSet(keys);
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hands every stored pair to the consumer. The locations of the records
+     * are copied off the heap under the lock, and the records are read
+     * after it is released, so writes continue during the iteration. A
+     * pair changed meanwhile may be handed over with its earlier value.
+     */
+    @Override
+    public void forEach(BiConsumer<String, String> consumer) {
+        forEachLocation((slabs, location) ->
+                consumer.accept(readString(slabs, location, false), readString(slabs, location, true)));
+    }
+
+    //Consumer of the location of a record and the slabs it is read from.
+    private interface LocationConsumer {
+        void accept(ByteBuffer[] slabs, long location);
+    }
+
+    //Hands the location of every record in the index to the consumer.
+    private void forEachLocation(LocationConsumer consumer) {
+        ByteBuffer locations;
+        ByteBuffer[] slabsAtStart;
+        iterations.incrementAndGet();
+        try {
+            lock.readLock().lock();
+            try {
+                slabsAtStart = slabs;
+                locations = ByteBuffer.allocateDirect(Math.max(size, 1) * 8);
+                for (int slot = 0; slot < capacity; slot++) {
+                    long location = slotLocation(slot);
+                    if (location != EMPTY && location != REMOVED) {
+                        locations.putLong(location);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            //Records are never changed in place and no slab is reused while
+            //the iteration runs, so they are read without the lock.
+            locations.flip();
+            while (locations.hasRemaining()) {
+                consumer.accept(slabsAtStart, locations.getLong());
+            }
+        } finally {
+            iterations.decrementAndGet();
+        }
+
+        //Compact the slabs skipped while the iteration ran.
+        lock.writeLock().lock();
+        try {
+            for (int slab = 0; slab < slabs.length; slab++) {
+                compactIfNeeded(slab);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            LOGGER.info("Closing off-heap store of " + size + " keys in " + countSlabs() + " slabs");
+            slabs = new ByteBuffer[1];
+            slabUsed = new int[1];
+            slabLive = new int[1];
+            spareSlabs.clear();
+            activeSlab = -1;
+            capacity = INITIAL_CAPACITY;
+            index = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+            size = 0;
+            usedSlots = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Number of slabs in use.
+    private int countSlabs() {
+        int count = 0;
+        for (ByteBuffer slab : slabs) {
+            if (slab != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
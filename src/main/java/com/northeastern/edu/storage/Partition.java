@@ -0,0 +1,402 @@
+package com.northeastern.edu.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * One hash partition of the server state. A partition holds the keys and
+ * clients that hash to it and the {@link AcceptorState} of the consensus
+ * groups assigned to it, and has its own {@link MutationLog}, group
+ * commit, {@link Snapshot} and lock, so mutations of different partitions
+ * never wait on each other.
+ *
+ * The files of a partition are derived from its name:
+ *  name.log.n     - the segments of the mutation log.
+ *  name.snapshot  - the latest snapshot.
+ *  name.kv.n      - the segments of a mapped key-value store.
+ */
+final class Partition implements Closeable {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(Partition.class.getName());
+
+    //Name the files of the partition are derived from.
+    private final String name;
+
+    //Key-value pairs stored by the clients.
+    private final KeyValueStore data;
+
+    //Secret-sharing keys issued to each client and the digest of their secret.
+    private final ConcurrentMap<String, ClientLogin> logins = new ConcurrentHashMap<>();
+
+    //Time the last key was issued to each client.
+    private final ConcurrentMap<String, String> commitTimes = new ConcurrentHashMap<>();
+
+    //Log every change is appended to before it is applied.
+    private final MutationLog mutationLog;
+
+    //Makes the appended changes durable.
+    private final GroupCommit groupCommit;
+
+    //File the snapshots are written to.
+    private final File snapshotFile;
+
+    //Number of mutations applied since the last snapshot.
+    private final AtomicLong mutationsSinceSnapshot = new AtomicLong();
+
+    //Last slot of the log of each consensus group applied to the partition.
+    private final ConcurrentMap<Integer, Long> appliedSlots = new ConcurrentHashMap<>();
+
+    //State of the acceptors of the consensus groups kept in the partition,
+    //guarded by the lock of the partition.
+    private final Map<Integer, AcceptorState> acceptors = new HashMap<>();
+
+    /**
+     * Loads the snapshot of the partition and applies the mutations logged since.
+     *
+     * @param name        Name the files of the partition are derived from.
+     * @param engine      Where the key-value pairs are kept.
+     * @param segmentSize Size of a segment file of the mapped engine.
+     * @param durability  How changes are made durable before they are acknowledged.
+     */
+    Partition(String name, KeyValueStore.Engine engine, int segmentSize,
+              GroupCommit.Durability durability) throws IOException {
+        long start = System.currentTimeMillis();
+        this.name = name;
+        this.data = KeyValueStore.open(engine, name + ".kv", segmentSize);
+        this.snapshotFile = new File(name + ".snapshot");
+
+        long snapshotSequence = 0;
+        if (snapshotFile.exists()) {
+            snapshotSequence = Snapshot.read(snapshotFile, data::put, this::restoreClientLogin, commitTimes::put,
+                    this::restoreAppliedSlot, new SnapshotCodec.AcceptorSink() {
+                        @Override
+                        public void promised(int group, long ballot, int leader) {
+                            acceptor(group).promise(ballot, leader);
+                        }
+
+                        @Override
+                        public void accepted(int group, long slot, String value) {
+                            acceptor(group).accept(slot, value);
+                        }
+                    });
+        }
+
+        //Replay the tail of the log the snapshot does not cover.
+        final long replayAfter = snapshotSequence;
+        AtomicLong replayed = new AtomicLong();
+        this.mutationLog = new MutationLog(name + ".log");
+        this.mutationLog.skipPast(snapshotSequence);
+        this.mutationLog.replay(mutation -> {
+            if (mutation.getSequence() > replayAfter) {
+                applyToMemory(mutation);
+                replayed.incrementAndGet();
+            }
+        });
+        this.mutationsSinceSnapshot.set(replayed.get());
+        this.groupCommit = new GroupCommit(mutationLog, durability);
+
+        LOGGER.info("Loaded " + name + ": " + data.size() + " keys and " + logins.size() + " clients in "
+                + (System.currentTimeMillis() - start) + "ms, replaying " + replayed.get()
+                + " mutations after snapshot sequence " + snapshotSequence);
+    }
+
+    /**
+     * Whether any log or snapshot of the named partition exists.
+     */
+    static boolean exists(String name) {
+        return listFiles(name).length > 0;
+    }
+
+    /**
+     * Deletes the log, snapshot and key-value files of the named partition.
+     */
+    static void deleteFiles(String name) throws IOException {
+        for (File file : listFiles(name)) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    //Lists the files of the named partition.
+    private static File[] listFiles(String name) {
+        File base = new File(name).getAbsoluteFile();
+        String log = base.getName() + ".log.";
+        String snapshot = base.getName() + ".snapshot";
+        String keyValueStore = base.getName() + ".kv.";
+
+        File[] files = base.getParentFile().listFiles((directory, fileName) ->
+                fileName.startsWith(log) || fileName.startsWith(snapshot) || fileName.startsWith(keyValueStore));
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Takes a snapshot if at least the given number of mutations were
+     * applied since the last one.
+     */
+    void snapshotIfDue(long minimumMutations) throws IOException {
+        if (mutationsSinceSnapshot.get() >= minimumMutations) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the partition and deletes the log segments it covers.
+     *
+     * The log is rolled and the keys and commit sections are copied while
+     * mutations are held off, so they match the last sequence number exactly.
+     * The data section is read afterwards while writes continue; it may
+     * already contain some later writes and deletes, which is harmless as
+     * replaying them again on start leaves the same values.
+     */
+    void snapshot() throws IOException {
+        synchronized (snapshotFile) {
+            long start = System.currentTimeMillis();
+
+            int segment;
+            long lastSequence;
+            Map<String, ClientLogin> loginsCopy;
+            Map<String, String> commitTimesCopy;
+            Map<Integer, Long> slotsCopy;
+            Map<Integer, AcceptorState> acceptorsCopy;
+            synchronized (this) {
+                segment = mutationLog.roll();
+                lastSequence = mutationLog.getLastSequence();
+                slotsCopy = new HashMap<>(appliedSlots);
+                acceptorsCopy = acceptorStates();
+                loginsCopy = new HashMap<>(logins);
+                commitTimesCopy = new HashMap<>(commitTimes);
+                mutationsSinceSnapshot.set(0);
+            }
+
+            Snapshot.write(snapshotFile, lastSequence, encoder -> {
+                try {
+                    data.forEach((key, value) -> {
+                        try {
+                            encoder.data(key, value);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+
+                for (Map.Entry<String, ClientLogin> entry : loginsCopy.entrySet()) {
+                    encoder.clientLogin(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<String, String> entry : commitTimesCopy.entrySet()) {
+                    encoder.commitTime(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<Integer, Long> entry : slotsCopy.entrySet()) {
+                    encoder.appliedSlot(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<Integer, AcceptorState> entry : acceptorsCopy.entrySet()) {
+                    AcceptorState acceptor = entry.getValue();
+                    encoder.promised(entry.getKey(), acceptor.getPromised(), acceptor.getLeader());
+                    for (Map.Entry<Long, String> accepted : acceptor.getAccepted().entrySet()) {
+                        encoder.accepted(entry.getKey(), accepted.getKey(), accepted.getValue());
+                    }
+                }
+            });
+            mutationLog.deleteSegmentsBefore(segment);
+
+            LOGGER.info("Snapshot of " + name + " at sequence " + lastSequence + " written in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Hands every entry of the partition to the consumer of its section.
+     * Only consistent while no mutations are applied.
+     */
+    void export(BiConsumer<String, String> dataConsumer, BiConsumer<String, ClientLogin> loginsConsumer,
+                BiConsumer<String, String> commitTimesConsumer) {
+        data.forEach(dataConsumer);
+        logins.forEach(loginsConsumer);
+        commitTimes.forEach(commitTimesConsumer);
+    }
+
+    //Adds an entry of the data section without logging it.
+    void restoreData(String key, String value) {
+        data.put(key, value);
+    }
+
+    //Adds the login of a client without logging it.
+    void restoreClientLogin(String clientAddress, ClientLogin login) {
+        logins.put(clientAddress, login);
+    }
+
+    //Adds the commit time of a client without logging it.
+    void restoreCommitTime(String clientAddress, String commitTime) {
+        commitTimes.put(clientAddress, commitTime);
+    }
+
+    //Records a slot of the log of a consensus group as applied without logging it.
+    synchronized void restoreAppliedSlot(int group, long slot) {
+        appliedSlots.merge(group, slot, Math::max);
+    }
+
+    //Last slot of the log of a consensus group applied to the partition, or 0.
+    long getAppliedSlot(int group) {
+        return appliedSlots.getOrDefault(group, 0L);
+    }
+
+    //Consensus groups with a slot applied to the partition.
+    Set<Integer> appliedGroups() {
+        return appliedSlots.keySet();
+    }
+
+    //State of the acceptor of a consensus group, created if it has none.
+    private AcceptorState acceptor(int group) {
+        return acceptors.computeIfAbsent(group, key -> new AcceptorState());
+    }
+
+    //Copies of the acceptor states kept in the partition, by consensus group.
+    synchronized Map<Integer, AcceptorState> acceptorStates() {
+        Map<Integer, AcceptorState> copy = new HashMap<>();
+        for (Map.Entry<Integer, AcceptorState> entry : acceptors.entrySet()) {
+            copy.put(entry.getKey(), new AcceptorState(entry.getValue()));
+        }
+        return copy;
+    }
+
+    //Copy of the acceptor state of a consensus group, without the values
+    //of the slots up to an applied one, which are forgotten.
+    synchronized AcceptorState acceptorState(int group, long appliedSlot) {
+        AcceptorState acceptor = acceptor(group);
+        acceptor.forget(appliedSlot);
+        return new AcceptorState(acceptor);
+    }
+
+    //Adds the acceptor state of a consensus group without logging it.
+    synchronized void restoreAcceptor(int group, AcceptorState state) {
+        acceptors.put(group, new AcceptorState(state));
+    }
+
+    //Forgets the values the acceptor of a consensus group accepted in the
+    //slots up to an applied one. The records stay in the log until the
+    //next snapshot.
+    synchronized void forgetAccepted(int group, long appliedSlot) {
+        AcceptorState acceptor = acceptors.get(group);
+        if (acceptor != null) {
+            acceptor.forget(appliedSlot);
+        }
+    }
+
+    //Applies a logged mutation to the in-memory state.
+    private void applyToMemory(Mutation mutation) {
+        if (mutation.getSlot() > 0) {
+            appliedSlots.merge(mutation.getGroup(), mutation.getSlot(), Math::max);
+        }
+        switch (mutation.getOperation()) {
+            case WRITE:
+                for (Map.Entry<String, String> entry : mutation.getValues().entrySet()) {
+                    if (entry.getValue() == null) {
+                        data.remove(entry.getKey());
+                    } else {
+                        data.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                break;
+            case DELETE:
+                for (String key : mutation.getValues().keySet()) {
+                    data.remove(key);
+                }
+                break;
+            case LOGIN:
+                for (Map.Entry<String, String> entry : mutation.getValues().entrySet()) {
+                    logins.put(entry.getKey(), ClientLogin.fromValue(entry.getValue()));
+                    commitTimes.put(entry.getKey(), commitTime(mutation));
+                }
+                break;
+            case REVOKE:
+                logins.keySet().removeAll(mutation.getValues().keySet());
+                break;
+            case PROMISE:
+                for (Map.Entry<String, String> entry : mutation.getValues().entrySet()) {
+                    acceptor(mutation.getGroup()).promise(Long.parseLong(entry.getKey()),
+                            Integer.parseInt(entry.getValue()));
+                }
+                break;
+            case ACCEPT:
+                for (Map.Entry<String, String> entry : mutation.getValues().entrySet()) {
+                    acceptor(mutation.getGroup()).accept(Long.parseLong(entry.getKey()), entry.getValue());
+                }
+                break;
+        }
+    }
+
+    //Formats the time a mutation was logged as a commit time.
+    private static String commitTime(Mutation mutation) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(mutation.getTimestamp()), ZoneId.systemDefault()).toString();
+    }
+
+    //Logs a mutation and applies it. Holding the lock across the append
+    //and the apply keeps the order of the log and of the in-memory state
+    //the same. The mutation is durable once awaitDurable returns.
+    void append(Mutation.Operation operation, Map<String, String> values) throws IOException {
+        append(operation, values, 0, 0);
+    }
+
+    //Logs and applies a mutation decided in a slot of the log of a consensus
+    //group. The changes of a slot are appended while holding the lock of
+    //the partition, after checking the slot was not applied before.
+    void append(Mutation.Operation operation, Map<String, String> values, int group, long slot) throws IOException {
+        synchronized (this) {
+            applyToMemory(mutationLog.append(operation, values, group, slot));
+        }
+
+        mutationsSinceSnapshot.incrementAndGet();
+    }
+
+    //Waits for the mutations appended so far to become durable.
+    void awaitDurable() throws IOException {
+        groupCommit.awaitDurable();
+    }
+
+    //Reads the value stored for a key, or null if there is none.
+    String get(String key) {
+        return data.get(key);
+    }
+
+    //Reads the stored keys.
+    Set<String> keys() {
+        return data.keys();
+    }
+
+    //Number of stored keys.
+    int size() {
+        return data.size();
+    }
+
+    //Reads the last login of a client, or null if there is none.
+    ClientLogin getClientLogin(String clientAddress) {
+        return logins.get(clientAddress);
+    }
+
+    //Reads the time the last key was issued to a client, or null.
+    String getCommitTime(String clientAddress) {
+        return commitTimes.get(clientAddress);
+    }
+
+    @Override
+    public void close() throws IOException {
+        groupCommit.close();
+        mutationLog.close();
+        data.close();
+    }
+}
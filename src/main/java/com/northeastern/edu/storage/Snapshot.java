@@ -0,0 +1,64 @@
+package com.northeastern.edu.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Point-in-time copy of the server state, written so that only the
+ * mutations logged after it need to be replayed on start. The state is
+ * encoded with {@link SnapshotCodec}.
+ */
+final class Snapshot {
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes a snapshot next to the target and renames it into place,
+     * so a crash never leaves a partial snapshot behind.
+     *
+     * @param file         Snapshot file to replace.
+     * @param lastSequence Sequence number of the last mutation covered.
+     * @param source       Writes the entries of the snapshot.
+     * @return The number of entries written.
+     */
+    static long write(File file, long lastSequence, SnapshotCodec.Source source) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+
+        long entries;
+        try (FileOutputStream fileStream = new FileOutputStream(temporary)) {
+            SnapshotCodec.Encoder encoder = new SnapshotCodec.Encoder(fileStream, lastSequence);
+            source.encodeTo(encoder);
+            entries = encoder.finish();
+            fileStream.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary.toPath());
+            throw e;
+        }
+
+        Files.move(temporary.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries;
+    }
+
+    /**
+     * Reads a snapshot and hands each entry to the consumer of its section.
+     *
+     * @return The sequence number of the last mutation covered.
+     */
+    static long read(File file, BiConsumer<String, String> data, BiConsumer<String, ClientLogin> logins,
+                     BiConsumer<String, String> commitTimes, BiConsumer<Integer, Long> appliedSlots,
+                     SnapshotCodec.AcceptorSink acceptors) throws IOException {
+        try (FileInputStream fileStream = new FileInputStream(file)) {
+            return SnapshotCodec.decode(fileStream, data, logins, commitTimes, appliedSlots, acceptors);
+        } catch (IOException e) {
+            throw new IOException("Error reading snapshot " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
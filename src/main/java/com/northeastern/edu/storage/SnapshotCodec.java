@@ -0,0 +1,296 @@
+package com.northeastern.edu.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary encoding of the server state: the data, keys and commit sections.
+ * Entries are encoded and decoded one at a time, so neither side ever
+ * holds the whole state as a document.
+ *
+ * A stream is laid out as:
+ * <pre>
+ *     int   magic number
+ *     int   format version
+ *     long  sequence number of the last mutation covered
+ *     entries, each a one-byte section tag followed by the entry
+ *     byte  end tag
+ *     long  CRC32 of everything before it
+ * </pre>
+ * Data and commit entries are two strings, login entries a client address,
+ * the digest of its secret and an int count followed by that many keys,
+ * and each group slot entry an int consensus group and a long holding the
+ * last slot of its log applied to the state. The acceptor state of a consensus group is written as a
+ * promise entry, an int group, a long ballot and an int server, and an
+ * accepted entry per slot, an int group, a long slot and a string. Strings
+ * are written as an int length followed by the UTF-8 bytes. Keys entries,
+ * which held the keys of a client without a digest, are no longer written
+ * and are read as logins without one.
+ */
+public final class SnapshotCodec {
+
+    //Identifies a snapshot stream.
+    private static final int MAGIC = 0x534E4150;
+
+    //Version written by the encoder.
+    private static final int VERSION = 1;
+
+    //Tags preceding each entry, and the end of the entries.
+    private static final byte END = 0;
+    private static final byte DATA = 1;
+    private static final byte KEYS = 2;
+    private static final byte COMMIT = 3;
+    private static final byte SLOT = 4;
+    private static final byte PROMISE = 5;
+    private static final byte ACCEPTED = 6;
+    private static final byte LOGIN = 7;
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * Writes the entries of a snapshot to an encoder.
+     */
+    public interface Source {
+        void encodeTo(Encoder encoder) throws IOException;
+    }
+
+    /**
+     * Receives the acceptor state of the consensus groups.
+     */
+    public interface AcceptorSink {
+        //Highest ballot the acceptor of a group promised, and to which server.
+        void promised(int group, long ballot, int leader);
+
+        //Value the acceptor of a group accepted in a slot.
+        void accepted(int group, long slot, String value);
+    }
+
+    /**
+     * Encodes entries onto a stream as they are handed over.
+     */
+    public static final class Encoder {
+
+        //Checksum of everything written so far.
+        private final CheckedOutputStream checked;
+
+        //Stream the entries are written to.
+        private final DataOutputStream output;
+
+        //Number of entries written.
+        private long entries;
+
+        /**
+         * Writes the header of a snapshot covering the given sequence number.
+         *
+         * @param stream       Stream to write to; it is not closed.
+         * @param lastSequence Sequence number of the last mutation covered.
+         */
+        public Encoder(OutputStream stream, long lastSequence) throws IOException {
+            this.checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+            this.output = new DataOutputStream(checked);
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(lastSequence);
+        }
+
+        //Writes an entry of the data section.
+        public void data(String key, String value) throws IOException {
+            output.writeByte(DATA);
+            writeString(output, key);
+            writeString(output, value);
+            entries++;
+        }
+
+        //Writes the last login of a client.
+        public void clientLogin(String clientAddress, ClientLogin login) throws IOException {
+            output.writeByte(LOGIN);
+            writeString(output, clientAddress);
+            writeString(output, login.getDigest());
+            output.writeInt(login.getKeys().size());
+            for (String key : login.getKeys()) {
+                writeString(output, key);
+            }
+            entries++;
+        }
+
+        //Writes the commit time of a client.
+        public void commitTime(String clientAddress, String commitTime) throws IOException {
+            output.writeByte(COMMIT);
+            writeString(output, clientAddress);
+            writeString(output, commitTime);
+            entries++;
+        }
+
+        //Writes the last slot of the log of a consensus group applied to the state.
+        public void appliedSlot(int group, long slot) throws IOException {
+            output.writeByte(SLOT);
+            output.writeInt(group);
+            output.writeLong(slot);
+        }
+
+        //Writes the highest ballot the acceptor of a consensus group promised.
+        public void promised(int group, long ballot, int leader) throws IOException {
+            output.writeByte(PROMISE);
+            output.writeInt(group);
+            output.writeLong(ballot);
+            output.writeInt(leader);
+        }
+
+        //Writes a value the acceptor of a consensus group accepted in a slot.
+        public void accepted(int group, long slot, String value) throws IOException {
+            output.writeByte(ACCEPTED);
+            output.writeInt(group);
+            output.writeLong(slot);
+            writeString(output, value);
+        }
+
+        /**
+         * Ends the entries, writes the checksum and flushes the stream.
+         *
+         * @return The number of entries written.
+         */
+        public long finish() throws IOException {
+            output.writeByte(END);
+            output.flush();
+            output.writeLong(checked.getChecksum().getValue());
+            output.flush();
+            return entries;
+        }
+    }
+
+    /**
+     * Decodes a snapshot and hands each entry to the consumer of its section.
+     *
+     * @param stream Stream to read from; it is not closed.
+     * @return The sequence number of the last mutation covered.
+     */
+    public static long decode(InputStream stream, BiConsumer<String, String> data,
+                              BiConsumer<String, ClientLogin> logins, BiConsumer<String, String> commitTimes)
+            throws IOException {
+        return decode(stream, data, logins, commitTimes, (group, slot) -> {}, new AcceptorSink() {
+            @Override
+            public void promised(int group, long ballot, int leader) {
+            }
+
+            @Override
+            public void accepted(int group, long slot, String value) {
+            }
+        });
+    }
+
+    /**
+     * Decodes a snapshot and hands each entry to the consumer of its section,
+     * the last applied slot of the log of each consensus group to the slot
+     * consumer, and the acceptor state of each group to the acceptor sink.
+     *
+     * @param stream Stream to read from; it is not closed.
+     * @return The sequence number of the last mutation covered.
+     */
+    public static long decode(InputStream stream, BiConsumer<String, String> data,
+                              BiConsumer<String, ClientLogin> logins, BiConsumer<String, String> commitTimes,
+                              BiConsumer<Integer, Long> appliedSlots, AcceptorSink acceptors) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(stream), new CRC32());
+        DataInputStream input = new DataInputStream(checked);
+
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        long lastSequence = input.readLong();
+        decodeEntries(input, data, logins, commitTimes, appliedSlots, acceptors);
+
+        long expected = checked.getChecksum().getValue();
+        if (input.readLong() != expected) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+
+        return lastSequence;
+    }
+
+    //Reads tagged entries up to the end tag.
+    private static void decodeEntries(DataInputStream input, BiConsumer<String, String> data,
+                                      BiConsumer<String, ClientLogin> logins,
+                                      BiConsumer<String, String> commitTimes,
+                                      BiConsumer<Integer, Long> appliedSlots,
+                                      AcceptorSink acceptors) throws IOException {
+        while (true) {
+            byte tag = input.readByte();
+            switch (tag) {
+                case END:
+                    return;
+                case DATA:
+                    data.accept(readString(input), readString(input));
+                    break;
+                case KEYS:
+                    logins.accept(readString(input), new ClientLogin("", readKeys(input)));
+                    break;
+                case LOGIN:
+                    String clientAddress = readString(input);
+                    String digest = readString(input);
+                    logins.accept(clientAddress, new ClientLogin(digest, readKeys(input)));
+                    break;
+                case COMMIT:
+                    commitTimes.accept(readString(input), readString(input));
+                    break;
+                case SLOT:
+                    appliedSlots.accept(input.readInt(), input.readLong());
+                    break;
+                case PROMISE:
+                    acceptors.promised(input.readInt(), input.readLong(), input.readInt());
+                    break;
+                case ACCEPTED:
+                    acceptors.accepted(input.readInt(), input.readLong(), readString(input));
+                    break;
+                default:
+                    throw new IOException("Unknown snapshot entry tag " + tag);
+            }
+        }
+    }
+
+    //Reads a count-prefixed list of keys.
+    private static List<String> readKeys(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        List<String> keys = new ArrayList<>(size);
+        for (int key = 0; key < size; key++) {
+            keys.add(readString(input));
+        }
+        return keys;
+    }
+
+    //Writes a length-prefixed UTF-8 string.
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    //Reads a length-prefixed UTF-8 string.
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,50 @@
+package com.northeastern.edu.utils;
+
+/**
+ * Ballot numbers of the Paxos rounds, packed into a long as a round number
+ * in the high bits and the id of the proposing server in the low 16 bits.
+ * Ballots compare as plain longs: by round first, then by server, so two
+ * servers never propose the same ballot.
+ *
+ * A new ballot takes the next round after the highest one seen, or the
+ * current time in milliseconds if that is higher, so a restarted server,
+ * which forgot the ballots it saw, still starts above them. Zero is lower
+ * than every ballot and stands for none.
+ */
+final class Ballot {
+
+    //Ballot lower than any proposed.
+    static final long NONE = 0;
+
+    //Bits holding the server id.
+    private static final int NODE_BITS = 16;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+
+    private Ballot() {
+    }
+
+    //Packs a round and a server id into a ballot.
+    static long of(long round, int nodeId) {
+        return (round << NODE_BITS) | (nodeId & NODE_MASK);
+    }
+
+    //Round of a ballot.
+    static long round(long ballot) {
+        return ballot >>> NODE_BITS;
+    }
+
+    //Server that proposed a ballot.
+    static int nodeId(long ballot) {
+        return (int) (ballot & NODE_MASK);
+    }
+
+    //Ballot of a server higher than the given one.
+    static long next(long highest, int nodeId) {
+        return of(Math.max(round(highest) + 1, System.currentTimeMillis()), nodeId);
+    }
+
+    //Readable form of a ballot for the logs.
+    static String toString(long ballot) {
+        return round(ballot) + "." + nodeId(ballot);
+    }
+}
@@ -2,18 +2,13 @@ package com.northeastern.edu.utils;
 
 import com.northeastern.edu.secretSharing.Key;
 import com.northeastern.edu.secretSharing.SecretSharing;
+import com.northeastern.edu.storage.ClientLogin;
+import com.northeastern.edu.storage.LocalStore;
 import com.sun.tools.corba.se.idl.StringGen;
 import generated.thrift.impl.*;
-import javafx.util.Pair;
 import org.apache.thrift.TException;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.logging.Logger;
 
@@ -22,91 +17,45 @@ public abstract class ClientAuthentication implements CommunicationService.Iface
     //Logger for the class.
     private static Logger LOGGER = Logger.getLogger(ClientAuthentication.class.getName());
 
-    //Secret-Sharing Keys for client.
-    protected Map<String, List<String>> clientKeys;
-
-    //Reconstruction keys for the client
-    private List<Key> clientReconstructionKeys;
-
-    //Last key commit times
-    protected  Map<String, String> lastCommittedDate;
-
     //FileName to canWriteOrDelete and read data from memory.
     protected String memoryObjectFileName = "data";
 
+    //FileName the logs, snapshots and key-value files of the server state are derived from.
+    protected String storageFileName = "data";
+
+    //In-memory state of the server, backed by the data file and the mutation log.
+    protected LocalStore localStore;
+
     //Random value for the list
     Random randomValue;
 
-    //Secret Sharing class
-    SecretSharing sharing;
+    //Secret Sharing class, shared by the concurrent logins.
+    final SecretSharing sharing;
 
-    protected ClientAuthentication(Integer portNumber) {
-        clientKeys = new HashMap<>();
+    protected ClientAuthentication(Integer portNumber) throws IOException {
         randomValue = new Random();
-        lastCommittedDate = new HashMap<>();
 
         //Construct file name for the server.
         this.memoryObjectFileName += ":" + portNumber.toString() + ".json";
+        this.storageFileName += ":" + portNumber.toString();
 
-        sharing = new SecretSharing(this.memoryObjectFileName);
-    }
-
-    //Loads the client password value data store from memory.
-    protected Object loadKeysMemoryObject(int mode) throws IllegalStateException, IOException {
-        try {
-            FileReader reader = new FileReader(memoryObjectFileName);
-            JSONParser jsonParser = new JSONParser();
-            return ((Map<String, String>)jsonParser.parse(reader)).get("keys");
-        } catch (IOException e) {
-            String message = "Error loading data from memory: " + e.getMessage();
-            LOGGER.severe(message);
-
-            if (mode == 0) {
-                new File(memoryObjectFileName).createNewFile();
-            } else {}
-
-        } catch (ParseException e) {
-            LOGGER.info("File: " + memoryObjectFileName + " is empty.");
-        }
-
-        return defaultMemoryObject();
-    }
-
-    //Loads the client password value data store from memory.
-    protected Object loadCommitTimesMemoryObject(int mode) throws IllegalStateException, IOException {
-        try {
-            FileReader reader = new FileReader(memoryObjectFileName);
-            JSONParser jsonParser = new JSONParser();
-            return ((Map<String, String>)jsonParser.parse(reader)).get("commit");
-        } catch (IOException e) {
-            String message = "Error loading data from memory: " + e.getMessage();
-            LOGGER.severe(message);
-
-            if (mode == 0) {
-                new File(memoryObjectFileName).createNewFile();
-            } else {}
-
-        } catch (ParseException e) {
-            LOGGER.info("File: " + memoryObjectFileName + " is empty.");
-        }
-
-        return defaultMemoryObject();
-    }
+        //Load the state of the server once; it is kept up to date in memory.
+        this.localStore = new LocalStore(this.storageFileName, this.memoryObjectFileName,
+                ServerConfiguration.storagePartitions(), ServerConfiguration.storageEngine(),
+                ServerConfiguration.segmentSize(), ServerConfiguration.durability());
+        this.localStore.scheduleSnapshots(ServerConfiguration.snapshotIntervalSeconds(),
+                ServerConfiguration.snapshotMinimumMutations());
 
-    //Generates the structure of a default memory object
-    protected Object defaultMemoryObject() {
-        Map<String, Object> defaultMemoryObject = new HashMap<>();
-        return defaultMemoryObject;
+        sharing = new SecretSharing(ServerConfiguration.sharingEngine());
     }
 
     //Attempts reconstruction of the client keys with the keys
-    //in the memory.
-    private boolean attemptReconstruction(String clientAddress) throws IOException {
-        this.clientKeys = (Map<String, List<String>>) loadKeysMemoryObject(1);
+    //in the memory, against the digest stored with them.
+    private boolean attemptReconstruction(String clientAddress) {
+        ClientLogin clientLogin = localStore.getClientLogin(clientAddress);
 
-        if (clientKeys != null && clientKeys.containsKey(clientAddress)) {
-            generateKeysFromString(clientKeys.get(clientAddress));
-            return sharing.reconstruction(clientReconstructionKeys);
+        if (clientLogin != null) {
+            return sharing.reconstruction(generateKeysFromString(clientLogin.getKeys()), clientLogin.getDigest());
         } else {
             return false;
         }
@@ -116,19 +65,18 @@ public abstract class ClientAuthentication implements CommunicationService.Iface
      * Generates keys from the string.
      *
      * @param keys   List of keys
+     * @return Reconstruction keys for the client
      */
-    private void generateKeysFromString(List<String> keys) {
-        clientReconstructionKeys = new ArrayList<>();
+    private List<Key> generateKeysFromString(List<String> keys) {
+        List<Key> clientReconstructionKeys = new ArrayList<>();
         for (String key: keys) {
-            String[] value = key.split("=");
+            Key newKey = sharing.parseKey(key);
 
-            if (value.length ==2) {
-                Key newKey = new Key(
-                        new Pair<>(Integer.parseInt(value[0])
-                                , new BigInteger(value[1])));
+            if (newKey != null) {
                 clientReconstructionKeys.add(newKey);
             }
         }
+        return clientReconstructionKeys;
     }
 
     @Override
@@ -142,29 +90,26 @@ public abstract class ClientAuthentication implements CommunicationService.Iface
                 //Using the password, construct the key set.
                 List<Key> keys = sharing.preparation(password);
 
-                //As each client would need at least three keys to reconstruct
-                //the password, send three random keys to the client.
-                Map<String, String> clientKeyMap;
-
-
+                //As each client would need at least k keys to reconstruct
+                //the password, issue k random keys to the client, all in
+                //one write with the digest of the password so they replace
+                //the previous keys and digest together.
                 Collections.shuffle(keys);
-                for (int index =0; index<3; index++) {
-                    Key key = keys.get(index);
-
-                    clientKeyMap = new HashMap<>();
-                    clientKeyMap.put(clientAddress, key.toString());
-                    response = storeKeyValue(clientKeyMap, OperationType.LOGIN);
-
-                    if (response.type == MessageType.FAILURE) {
-                        return response;
-                    }
+                List<String> clientKeys = new ArrayList<>();
+                for (Key key : keys.subList(0, sharing.requiredKeys())) {
+                    clientKeys.add(key.toString());
                 }
+
+                Map<String, String> clientKeyMap = new HashMap<>();
+                clientKeyMap.put(clientAddress, new ClientLogin(sharing.digest(password), clientKeys).toValue());
+                response = storeKeyValue(clientKeyMap, OperationType.LOGIN);
             }
 
             return response;
-        } catch (IOException e) {
-            LOGGER.severe("Error reading keys value from memory.");
-            throw new TException("Error reading keys value from memory." + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Password of client " + clientAddress + " cannot be shared: " + e.getMessage());
+            response.type = MessageType.FAILURE;
+            return response;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+package com.northeastern.edu.utils;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounded pool of connections to one replica. A thrift client carries one
+ * call at a time, so each call checks a connection out, has it to itself,
+ * and returns it once answered; concurrent calls to the replica run on
+ * different connections, up to the size of the pool, and further calls wait
+ * for one to be returned.
+ *
+ * A connection is opened only when none is idle, and is checked before it
+ * is handed out again; one found broken is closed and replaced. Connections
+ * idle for longer than the idle time are closed in the background. The
+ * connection most recently returned is handed out first, so the others
+ * stay idle and are closed once the load drops.
+ */
+class ConnectionPool<C> {
+
+    /**
+     * Opens a connection.
+     */
+    interface Opener<C> {
+        C open() throws TException;
+    }
+
+    //Closes the connections idle for too long, for every pool.
+    private static final ScheduledExecutorService EVICTION = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "connection-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //Connection waiting to be checked out, and since when.
+    private static final class Idle<C> {
+        private final C connection;
+        private final long since;
+
+        Idle(C connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    //Replica the connections lead to, for the errors.
+    private final String name;
+
+    //Most connections open at once, and time one may stay idle in
+    //nanoseconds.
+    private final int maxSize;
+    private final long idleNanos;
+
+    //Opens, checks and closes the connections.
+    private final Opener<C> opener;
+    private final Predicate<C> valid;
+    private final Consumer<C> closer;
+
+    //Idle connections, the most recently returned first. Guarded by the pool.
+    private final Deque<Idle<C>> idle = new ArrayDeque<>();
+
+    //Connections open or being opened, idle or checked out. Guarded by the pool.
+    private int open;
+
+    /**
+     * @param name       Replica the connections lead to.
+     * @param maxSize    Most connections open at once.
+     * @param idleMillis Time a connection may stay idle before it is closed.
+     * @param opener     Opens a connection.
+     * @param valid      Whether an idle connection can still be used.
+     * @param closer     Closes a connection.
+     */
+    ConnectionPool(String name, int maxSize, long idleMillis, Opener<C> opener, Predicate<C> valid, Consumer<C> closer) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.opener = opener;
+        this.valid = valid;
+        this.closer = closer;
+
+        EVICTION.scheduleWithFixedDelay(this::evictIdle, idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks a connection out, waiting for one to be returned while all
+     * of them are in use.
+     *
+     * @param timeoutMillis Longest time to wait for a connection.
+     */
+    C checkout(long timeoutMillis) throws TException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (true) {
+                C connection = takeIdle();
+                if (connection != null) {
+                    return connection;
+                }
+                if (open < maxSize) {
+                    open++;
+                    break;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TTransportException(TTransportException.TIMED_OUT,
+                            "No connection to replica " + name + " free within " + timeoutMillis + "ms");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TException("Interrupted while waiting for a connection to replica " + name, e);
+                }
+            }
+        }
+        return openReserved();
+    }
+
+    /**
+     * Checks a connection out without waiting.
+     *
+     * @return The connection, or null while all of them are in use.
+     */
+    C tryCheckout() throws TException {
+        synchronized (this) {
+            C connection = takeIdle();
+            if (connection != null) {
+                return connection;
+            }
+            if (open >= maxSize) {
+                return null;
+            }
+            open++;
+        }
+        return openReserved();
+    }
+
+    /**
+     * Returns a connection after a call that left it usable.
+     */
+    synchronized void release(C connection) {
+        idle.push(new Idle<>(connection, System.nanoTime()));
+        notifyAll();
+    }
+
+    /**
+     * Closes a connection after a call that failed on it, making room for
+     * a new one.
+     */
+    void invalidate(C connection) {
+        closer.accept(connection);
+        synchronized (this) {
+            open--;
+            notifyAll();
+        }
+    }
+
+    //Opens a connection a place in the pool was reserved for, giving the
+    //place back if it cannot be opened.
+    private C openReserved() throws TException {
+        try {
+            return opener.open();
+        } catch (TException | RuntimeException e) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    //Takes the most recently returned idle connection that is still
+    //usable, closing the broken ones found on the way.
+    private C takeIdle() {
+        while (!idle.isEmpty()) {
+            C connection = idle.pop().connection;
+            if (valid.test(connection)) {
+                return connection;
+            }
+            closer.accept(connection);
+            open--;
+        }
+        return null;
+    }
+
+    //Closes the connections idle for longer than the idle time.
+    private void evictIdle() {
+        List<C> evicted = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            Iterator<Idle<C>> oldest = idle.descendingIterator();
+            while (oldest.hasNext()) {
+                Idle<C> connection = oldest.next();
+                if (now - connection.since < idleNanos) {
+                    break;
+                }
+                oldest.remove();
+                evicted.add(connection.connection);
+                open--;
+            }
+            if (!evicted.isEmpty()) {
+                notifyAll();
+            }
+        }
+
+        for (C connection : evicted) {
+            closer.accept(connection);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.northeastern.edu.utils;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Sends a call to several replicas at once and waits only until a quorum
+ * of them has answered, so a round takes as long as the quorum-th fastest
+ * replica rather than the sum of all of them. The calls still outstanding
+ * keep running, and their responses are handed to the same handler as the
+ * ones that arrived in time.
+ *
+ * A call can instead wait until the responses satisfy a condition. Every
+ * replica is called either way, and a call in progress always completes,
+ * as a thrift connection cannot be used again after a call is abandoned
+ * halfway.
+ *
+ * The calls are asynchronous, so no thread waits for a replica; only the
+ * handlers of the responses run on the threads of the fan-out, which keeps
+ * them off the selector thread of the connections.
+ */
+class FanOut {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(FanOut.class.getName());
+
+    /**
+     * Call made to one replica, completing with its response.
+     */
+    interface ReplicaCall<R> {
+        CompletableFuture<R> call(Replica replica);
+    }
+
+    //Runs the handlers of the responses.
+    private final ExecutorService executor;
+
+    //Time to wait for a quorum in milliseconds.
+    private final long timeout;
+
+    FanOut(long timeout) {
+        this.timeout = timeout;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "replica-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Calls the replicas concurrently and returns the responses received
+     * once the quorum has been reached, every replica has answered, or the
+     * timeout has passed, whichever comes first.
+     *
+     * @param replicas   Replicas to call.
+     * @param call       Call to make to each replica.
+     * @param counts     Whether a response counts towards the quorum.
+     * @param quorum     Number of counting responses to wait for.
+     * @param onResponse Handles every response, including those arriving
+     *                   after this method returned. Runs on a fan-out
+     *                   thread, before the response is counted.
+     * @return The responses received so far, by replica.
+     */
+    <R> Map<Replica, R> call(Collection<Replica> replicas, ReplicaCall<R> call, Predicate<R> counts,
+                             int quorum, BiConsumer<Replica, R> onResponse) {
+        Predicate<Map<Replica, R>> done = responses -> {
+            int counted = 0;
+            for (R response : responses.values()) {
+                if (counts.test(response)) {
+                    counted++;
+                }
+            }
+            return counted >= quorum;
+        };
+        return run(replicas, call, done, onResponse);
+    }
+
+    /**
+     * Calls the replicas concurrently and returns the responses received
+     * once they satisfy the condition, every replica has answered, or the
+     * timeout has passed, whichever comes first.
+     *
+     * @param replicas   Replicas to call.
+     * @param call       Call to make to each replica.
+     * @param done       Whether the responses received so far are enough.
+     * @param onResponse Handles every response, including those arriving
+     *                   after this method returned. Runs on a fan-out
+     *                   thread, before the response is recorded.
+     * @return The responses received so far, by replica.
+     */
+    <R> Map<Replica, R> callUntil(Collection<Replica> replicas, ReplicaCall<R> call,
+                                  Predicate<Map<Replica, R>> done, BiConsumer<Replica, R> onResponse) {
+        return run(replicas, call, done, onResponse);
+    }
+
+    private <R> Map<Replica, R> run(Collection<Replica> replicas, ReplicaCall<R> call, Predicate<Map<Replica, R>> done,
+                                    BiConsumer<Replica, R> onResponse) {
+        Round<R> round = new Round<>(replicas.size(), done);
+
+        for (Replica replica : replicas) {
+            call.call(replica).whenCompleteAsync((response, error) -> {
+                try {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        LOGGER.warning("Error calling replica " + replica + ": " + cause.getMessage());
+                        return;
+                    }
+                    onResponse.accept(replica, response);
+                } catch (RuntimeException e) {
+                    LOGGER.severe("Error handling the response of replica " + replica + ": " + e.getMessage());
+                } finally {
+                    round.complete(replica, error == null ? response : null);
+                }
+            }, executor);
+        }
+
+        return round.await(timeout);
+    }
+
+    /**
+     * Responses of one fan-out.
+     */
+    private static class Round<R> {
+
+        //Number of replicas called, and whether the responses are enough.
+        private final int expected;
+        private final Predicate<Map<Replica, R>> done;
+
+        //Responses received, by replica.
+        private final Map<Replica, R> responses = new LinkedHashMap<>();
+
+        //Calls finished, with or without a response.
+        private int finished;
+
+        Round(int expected, Predicate<Map<Replica, R>> done) {
+            this.expected = expected;
+            this.done = done;
+        }
+
+        synchronized void complete(Replica replica, R response) {
+            if (response != null) {
+                responses.put(replica, response);
+            }
+            finished++;
+            notifyAll();
+        }
+
+        synchronized Map<Replica, R> await(long timeout) {
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+
+            try {
+                while (!done.test(responses) && finished < expected && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new LinkedHashMap<>(responses);
+        }
+    }
+}
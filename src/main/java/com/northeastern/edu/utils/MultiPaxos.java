@@ -0,0 +1,1296 @@
+package com.northeastern.edu.utils;
+
+import generated.thrift.impl.Command;
+import generated.thrift.impl.LogEntry;
+import generated.thrift.impl.MessageType;
+import generated.thrift.impl.ServerPacket;
+import org.apache.thrift.TException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Multi-Paxos over a log of numbered slots, each deciding a batch of
+ * writes, deletes and logins.
+ *
+ * A server becomes the leader by winning a prepare round for a ballot once;
+ * from then on each value only needs an accept round, in the next free slot.
+ * Several slots are in flight at once, so a slow replica delays the slots
+ * but does not limit them to one per round trip. A value is chosen once an
+ * accept quorum accepted it. The leader tells the replicas up to which slot
+ * every value is chosen, both in a commit notice and in its next accept request,
+ * and every server applies the chosen slots in order, so all of them apply
+ * the same changes in the same order however the rounds overlapped.
+ *
+ * A new leader asks the acceptors for the values they accepted in the slots
+ * it has not applied, and proposes the value with the highest ballot again in
+ * each of them, or a no-op for a slot nobody reported, before using new slots.
+ * The leader is replaced by the next server that fails to reach it and runs a
+ * prepare round of its own.
+ *
+ * Each consensus group runs its own instance, with its own log, leader and
+ * lock, so the writes of different groups are decided in parallel.
+ *
+ * With leases enabled, an acceptor that hears from the leader of the ballot
+ * it promised grants that leader a lease: it promises no other server until
+ * the lease ends, counted from when it heard. The leader holds the lease
+ * while an accept quorum granted it, counted from when it sent the request,
+ * less an allowance for clock drift, and renews it with a commit notice
+ * every third of the lease. Every prepare quorum meets the accept quorum
+ * that granted it. No other server can be elected while the lease is
+ * held, so the leader's own state reflects every write decided, and it
+ * serves reads without asking the replicas.
+ *
+ * A server that falls behind, after a restart or a partition, asks the
+ * replicas for what it missed and catches up from the one furthest ahead:
+ * from the chosen slots it retains, or, once that replica no longer retains
+ * them, from a snapshot of its state sent in chunks. The server keeps
+ * accepting values meanwhile, and applies the slots chosen since the
+ * snapshot once it is installed.
+ *
+ * Ballots are numbered as the basic Paxos rounds number them. The
+ * acceptor records every ballot it promises and every value it accepts
+ * durably before it answers, counting the leader as one of the acceptors,
+ * so a value chosen by a quorum is still reported to the next leader after
+ * the quorum restarted. The last applied slot is recorded with the state,
+ * so a restarted server continues the log where it stopped.
+ */
+class MultiPaxos {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(MultiPaxos.class.getName());
+
+    //Number of applied slots kept for new leaders and lagging replicas.
+    private static final int RETAINED_SLOTS = 1000;
+
+    //Most chosen slots sent in one response to a server catching up.
+    private static final int CATCH_UP_SLOTS = 100;
+
+    /**
+     * Applies the batch chosen for a slot to the local state.
+     */
+    interface Learner {
+        void learn(long slot, List<Command> commands) throws IOException;
+    }
+
+    /**
+     * Records the acceptor state durably. Records are made while holding
+     * the lock of the instance, so they are in the order of the changes
+     * they record, and are durable once sync returns, which is waited for
+     * outside of the lock so concurrent requests share a sync.
+     */
+    interface AcceptorLog {
+        //Records the highest ballot promised and the server it was promised to.
+        void promise(long ballot, int leader) throws IOException;
+
+        //Records a value accepted in a slot.
+        void accept(LogEntry entry) throws IOException;
+
+        //Waits for the records made so far to become durable.
+        void sync() throws IOException;
+    }
+
+    /**
+     * Copies the local state of the group, for the servers too far behind
+     * to catch up from the retained slots. No slot is applied while either
+     * copy runs. The state is copied through files, so it is never held in
+     * memory whole.
+     */
+    interface StateTransfer {
+        //Creates an empty file to hold a snapshot being sent or received.
+        File createFile() throws IOException;
+
+        //Writes the state as of the last applied slot.
+        void write(OutputStream stream) throws IOException;
+
+        //Replaces the state with one written to a file at the given slot.
+        void restore(File snapshot, long slot) throws IOException;
+    }
+
+    //Snapshot being sent to a server, and when it last asked for a chunk.
+    private static final class Transfer {
+        private final long slot;
+        private final File snapshot;
+        private final long length;
+        private volatile long lastRequest = System.currentTimeMillis();
+
+        Transfer(long slot, File snapshot) {
+            this.slot = slot;
+            this.snapshot = snapshot;
+            this.length = snapshot.length();
+        }
+    }
+
+    //Port identifying this server to the others.
+    private final int nodeId;
+
+    //Consensus group whose log this is, sent with every message.
+    private final int group;
+
+    //Connections to the other servers.
+    private final List<Replica> replicas;
+
+    //Sends the calls to the replicas concurrently.
+    private final FanOut fanOut;
+
+    //Number of replicas, besides this server, a prepare round and an
+    //accept round need.
+    private final int prepareQuorum;
+    private final int acceptQuorum;
+
+    //Applies the chosen values.
+    private final Learner learner;
+
+    //Records the promises and accepted values.
+    private final AcceptorLog acceptorLog;
+
+    //Copies the state for the servers too far behind, or null if they can
+    //only catch up from the retained slots.
+    private final StateTransfer stateTransfer;
+
+    //Bytes of a snapshot sent per chunk.
+    private final int chunkBytes;
+
+    //Snapshots being sent, by the server they are sent to.
+    private final Map<Integer, Transfer> transfers = new ConcurrentHashMap<>();
+
+    //Whether this server is catching up, and the thread it does so on.
+    private final AtomicBoolean catchingUp = new AtomicBoolean();
+    private final ExecutorService catchUpExecutor;
+
+    //Highest ballot promised, and the server it was promised to.
+    private long promised = Ballot.NONE;
+    private int promisedLeader;
+
+    //Values accepted for the slots that are not yet chosen.
+    private final NavigableMap<Long, LogEntry> accepted = new TreeMap<>();
+
+    //Values chosen for the slots not yet applied, and the last applied ones.
+    private final NavigableMap<Long, LogEntry> chosen = new TreeMap<>();
+
+    //Last slot applied to the local state.
+    private long appliedSlot;
+
+    //Ballot this server leads with, or none when it is not the leader.
+    private long ballot = Ballot.NONE;
+
+    //Next slot the leader proposes in, and the last one up to which it
+    //knows every slot is chosen.
+    private long nextSlot;
+    private long committedSlot;
+
+    //Last slot each replica reported applied after a catch-up.
+    private final Map<Replica, Long> replicaProgress = new ConcurrentHashMap<>();
+
+    //Lets one replica be sent the slots it missed at a time.
+    private final Object catchUpLock = new Object();
+
+    //Lets one prepare round run at a time.
+    private final Object electionLock = new Object();
+
+    //Time to wait for a chosen slot to be applied in milliseconds.
+    private final long timeout;
+
+    //Lets one thread apply the chosen slots, or write or restore a
+    //snapshot, at a time.
+    private final ReentrantLock applyLock = new ReentrantLock();
+
+    //Duration of a lease in nanoseconds, or 0 when leases are disabled.
+    private final long leaseNanos;
+
+    //End of the lease this server holds as the leader (System.nanoTime).
+    private long leaseUntil;
+
+    //Server granted a lease by this acceptor, and the end of the lease.
+    //A restarted acceptor forgot the lease it granted, so it grants an
+    //unknown server one from the start.
+    private int leaseGrantee = -1;
+    private long leaseGrantedUntil;
+
+    //Last slot recovered when this server was elected; reads are served
+    //locally only once it is applied.
+    private long recoveredSlot;
+
+    /**
+     * @param nodeId      Port identifying this server to the others.
+     * @param group       Consensus group whose log this is.
+     * @param replicas    Connections to the other servers.
+     * @param fanOut      Sends the calls to the replicas.
+     * @param prepareQuorum Number of replicas, besides this server, a prepare round needs.
+     * @param acceptQuorum  Number of replicas, besides this server, an accept round needs.
+     * @param appliedSlot Last slot already applied to the local state.
+     * @param timeout     Time to wait for a chosen slot to be applied.
+     * @param leaseMillis Duration of a leader lease, or 0 to disable leases.
+     * @param learner     Applies the chosen values.
+     * @param acceptorLog Records the promises and accepted values.
+     * @param stateTransfer Copies the state for the servers too far behind,
+     *                      or null to catch up from the retained slots only.
+     * @param chunkBytes  Bytes of a snapshot sent per chunk.
+     */
+    MultiPaxos(int nodeId, int group, List<Replica> replicas, FanOut fanOut, int prepareQuorum, int acceptQuorum,
+               long appliedSlot, long timeout, long leaseMillis, Learner learner, AcceptorLog acceptorLog,
+               StateTransfer stateTransfer, int chunkBytes) {
+        this.nodeId = nodeId;
+        this.group = group;
+        this.timeout = timeout;
+        this.replicas = replicas;
+        this.fanOut = fanOut;
+        this.prepareQuorum = prepareQuorum;
+        this.acceptQuorum = acceptQuorum;
+        this.learner = learner;
+        this.acceptorLog = acceptorLog;
+        this.stateTransfer = stateTransfer;
+        this.chunkBytes = chunkBytes;
+        this.appliedSlot = appliedSlot;
+        this.committedSlot = appliedSlot;
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.leaseGrantedUntil = System.nanoTime() + leaseNanos;
+
+        if (leaseMillis > 0) {
+            ScheduledExecutorService renewal = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "lease-renewal-" + group);
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, leaseMillis / 3);
+            renewal.scheduleWithFixedDelay(this::renewLease, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        this.catchUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catch-up-" + group);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restores the acceptor state recorded before a restart: the highest
+     * ballot promised, which is at least the ballot of every value accepted,
+     * and the values accepted in the slots not yet applied.
+     *
+     * @param recordedPromise  Highest ballot promised.
+     * @param recordedLeader   Server it was promised to.
+     * @param recordedAccepted Values accepted.
+     */
+    synchronized void recover(long recordedPromise, int recordedLeader, Collection<LogEntry> recordedAccepted) {
+        promised = recordedPromise;
+        promisedLeader = recordedLeader;
+        for (LogEntry entry : recordedAccepted) {
+            if (entry.slot > appliedSlot) {
+                accepted.put(entry.slot, entry);
+            }
+            if (entry.ballot > promised) {
+                promised = entry.ballot;
+                promisedLeader = Ballot.nodeId(entry.ballot);
+            }
+        }
+
+        if (promised != Ballot.NONE || !accepted.isEmpty()) {
+            LOGGER.info("Recovered the promise of ballot " + Ballot.toString(promised) + " and "
+                    + accepted.size() + " accepted slots");
+        }
+    }
+
+    /**
+     * Whether this server leads with a lease, and has applied every slot
+     * decided before it was elected, so its state can be read directly.
+     */
+    synchronized boolean holdsLease() {
+        return leaseNanos > 0 && ballot != Ballot.NONE && appliedSlot >= recoveredSlot
+                && System.nanoTime() - leaseUntil < 0;
+    }
+
+    /**
+     * Server this acceptor granted a lease that has not ended, which reads
+     * are forwarded to. Null if there is none or it is this server.
+     */
+    Replica leaseHolder() {
+        int holder;
+        synchronized (this) {
+            if (!grantsLease() || leaseGrantee == nodeId) {
+                return null;
+            }
+            holder = leaseGrantee;
+        }
+
+        for (Replica replica : replicas) {
+            if (replica.getPort() == holder) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    //Whether a lease granted by this acceptor has not ended.
+    private synchronized boolean grantsLease() {
+        return leaseNanos > 0 && leaseGrantee != 0 && System.nanoTime() - leaseGrantedUntil < 0;
+    }
+
+    //Grants the leader of the promised ballot a lease from now.
+    private synchronized void grantLease(int leader) {
+        if (leaseNanos > 0) {
+            leaseGrantee = leader;
+            leaseGrantedUntil = System.nanoTime() + leaseNanos;
+        }
+    }
+
+    //Extends the lease of the leader after an accept quorum granted it for a
+    //request sent at the given time. A tenth of the lease is left for the
+    //clocks of the acceptors running faster than this one.
+    private synchronized void extendLease(long sentAt, long grantedBallot) {
+        if (leaseNanos > 0 && grantedBallot == ballot) {
+            long until = sentAt + leaseNanos - leaseNanos / 10;
+            if (until - leaseUntil > 0) {
+                leaseUntil = until;
+            }
+            leaseGrantee = nodeId;
+            leaseGrantedUntil = until;
+        }
+    }
+
+    //Sends a commit notice while leading, so the acceptors renew the lease.
+    private void renewLease() {
+        long committed;
+        long current;
+        synchronized (this) {
+            if (ballot == Ballot.NONE) {
+                return;
+            }
+            committed = committedSlot;
+            current = ballot;
+        }
+        sendCommit(committed, current);
+    }
+
+    /**
+     * Server the requests are forwarded to: the one holding the highest
+     * ballot promised. Null if this server leads or no leader is known.
+     */
+    Replica leader() {
+        int leader;
+        synchronized (this) {
+            if (ballot != Ballot.NONE) {
+                return null;
+            }
+            leader = promisedLeader;
+        }
+
+        for (Replica replica : replicas) {
+            if (replica.getPort() == leader) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets a leader that could not be reached, so the next proposal
+     * starts a prepare round instead of being forwarded to it.
+     */
+    synchronized void leaderFailed(Replica leader) {
+        if (promisedLeader == leader.getPort()) {
+            LOGGER.warning("Leader " + leader + " is unreachable, electing a new one");
+            promisedLeader = 0;
+        }
+    }
+
+    /**
+     * Decides a batch in the next slot of the log, winning a prepare round
+     * first if this server is not the leader, and applies it. Batches
+     * proposed concurrently take consecutive slots and are accepted
+     * concurrently.
+     *
+     * @return Whether the batch was chosen and applied.
+     */
+    boolean propose(List<Command> commands) {
+        if (!isLeader()) {
+            synchronized (electionLock) {
+                if (!isLeader() && !elect()) {
+                    return false;
+                }
+            }
+        }
+
+        LogEntry entry;
+        synchronized (this) {
+            if (ballot == Ballot.NONE) {
+                return false;
+            }
+            entry = entry(nextSlot++, ballot, commands);
+        }
+        return accept(entry);
+    }
+
+    //Whether this server holds the highest ballot promised.
+    private synchronized boolean isLeader() {
+        return ballot != Ballot.NONE;
+    }
+
+    //Gives up the leadership; the next proposal runs a prepare round.
+    private synchronized void stepDown(long lostBallot) {
+        if (lostBallot == ballot) {
+            LOGGER.info("Stepping down as the leader of ballot " + Ballot.toString(lostBallot));
+            loseLeadership();
+        }
+    }
+
+    //Clears the ballot this server leads with, waking the proposals
+    //waiting for their slots to be applied.
+    private synchronized void loseLeadership() {
+        ballot = Ballot.NONE;
+        notifyAll();
+    }
+
+    //Creates the entry of a batch for a slot.
+    private static LogEntry entry(long slot, long ballot, List<Command> commands) {
+        LogEntry entry = new LogEntry();
+        entry.slot = slot;
+        entry.ballot = ballot;
+        entry.commands = commands;
+        return entry;
+    }
+
+    //Entry proposing nothing, for a slot no acceptor reported a value for.
+    private static LogEntry noOp(long slot, long ballot) {
+        return entry(slot, ballot, Collections.emptyList());
+    }
+
+    //Records a higher ballot reported by a replica that refused a request.
+    private synchronized void observe(ServerPacket refusal) {
+        if (refusal.ballot > promised) {
+            promised = refusal.ballot;
+            promisedLeader = refusal.leader;
+            loseLeadership();
+        }
+    }
+
+    /**
+     * Runs a prepare round for a new ballot, then proposes the values
+     * accepted in the slots this server has not applied with that ballot.
+     *
+     * @return Whether this server became the leader.
+     */
+    private boolean elect() {
+        long newBallot;
+        long fromSlot;
+        NavigableMap<Long, LogEntry> recovered = new TreeMap<>();
+        synchronized (this) {
+            if (grantsLease() && leaseGrantee != nodeId) {
+                LOGGER.info("Server " + leaseGrantee + " holds a lease, not electing");
+                return false;
+            }
+            newBallot = Ballot.next(promised, nodeId);
+            promised = newBallot;
+            promisedLeader = nodeId;
+            try {
+                acceptorLog.promise(newBallot, nodeId);
+            } catch (IOException e) {
+                LOGGER.severe("Error recording the promise of ballot " + Ballot.toString(newBallot) + ": " + e.getMessage());
+                return false;
+            }
+            fromSlot = appliedSlot + 1;
+            for (LogEntry entry : chosen.tailMap(fromSlot).values()) {
+                recover(recovered, entry);
+            }
+            for (LogEntry entry : accepted.tailMap(fromSlot).values()) {
+                recover(recovered, entry);
+            }
+        }
+
+        ServerPacket prepare = new ServerPacket();
+        prepare.type = MessageType.PROPOSAL;
+        prepare.group = group;
+        prepare.ballot = newBallot;
+        prepare.slot = fromSlot;
+        prepare.leader = nodeId;
+
+        Map<Replica, ServerPacket> responses = fanOut.call(replicas, replica -> replica.acceptProposal(prepare),
+                packet -> packet.type == MessageType.PROMISE, prepareQuorum, (replica, packet) -> {
+                    if (packet.type == MessageType.FAILURE) {
+                        observe(packet);
+                    }
+                });
+
+        //This server is one of the acceptors promising the ballot.
+        if (!syncAcceptor()) {
+            return false;
+        }
+
+        int promises = 0;
+        long highestApplied = fromSlot - 1;
+        for (ServerPacket packet : responses.values()) {
+            if (packet.type == MessageType.PROMISE) {
+                promises++;
+                highestApplied = Math.max(highestApplied, packet.slot);
+                if (packet.entries != null) {
+                    for (LogEntry entry : packet.entries) {
+                        recover(recovered, entry);
+                    }
+                }
+            }
+        }
+
+        if (promises < prepareQuorum) {
+            LOGGER.warning("Ballot " + Ballot.toString(newBallot) + " was promised by " + promises + " of " + prepareQuorum + " replicas needed");
+            return false;
+        }
+
+        //A replica applied slots this server cannot recover; it catches up
+        //from the replicas before it leads.
+        long lastSlot = recovered.isEmpty() ? fromSlot - 1 : recovered.lastKey();
+        if (highestApplied > lastSlot) {
+            LOGGER.warning("Slots " + fromSlot + " to " + highestApplied + " are not retained, not leading");
+            startCatchUp();
+            return false;
+        }
+
+        synchronized (this) {
+            if (newBallot != promised) {
+                return false;
+            }
+            ballot = newBallot;
+            nextSlot = lastSlot + 1;
+            recoveredSlot = lastSlot;
+            committedSlot = Math.max(committedSlot, appliedSlot);
+        }
+        LOGGER.info("Leading with ballot " + Ballot.toString(newBallot) + " from slot " + fromSlot);
+
+        for (long slot = fromSlot; slot <= lastSlot; slot++) {
+            LogEntry previous = recovered.get(slot);
+            LogEntry entry = previous == null ? noOp(slot, newBallot)
+                    : entry(slot, newBallot, previous.commands);
+            if (!accept(entry)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Keeps the entry with the highest ballot for each slot.
+    private static void recover(NavigableMap<Long, LogEntry> recovered, LogEntry entry) {
+        LogEntry current = recovered.get(entry.slot);
+        if (current == null || current.ballot < entry.ballot) {
+            recovered.put(entry.slot, entry);
+        }
+    }
+
+    /**
+     * Runs the accept round for an entry of the leader's ballot. Once an
+     * accept quorum accepted it the entry is chosen, applied, and the replicas
+     * are told it is committed.
+     *
+     * @return Whether the entry was chosen and applied.
+     */
+    private boolean accept(LogEntry entry) {
+        long entryBallot = entry.ballot;
+        long committed;
+        synchronized (this) {
+            if (entryBallot != ballot) {
+                return false;
+            }
+            accepted.put(entry.slot, entry);
+            try {
+                acceptorLog.accept(entry);
+            } catch (IOException e) {
+                LOGGER.severe("Error recording the value of slot " + entry.slot + ": " + e.getMessage());
+                return false;
+            }
+            committed = committedSlot;
+        }
+
+        ServerPacket request = new ServerPacket();
+        request.type = MessageType.ACCEPT_REQUEST;
+        request.group = group;
+        request.ballot = entry.ballot;
+        request.slot = entry.slot;
+        request.commands = entry.commands;
+        request.leader = nodeId;
+        request.committed = committed;
+
+        long sentAt = System.nanoTime();
+        Map<Replica, ServerPacket> responses = fanOut.call(replicas, replica -> replica.acceptProposal(request),
+                packet -> packet.type == MessageType.SUCCESS, acceptQuorum, (replica, packet) -> {
+                    if (packet.type == MessageType.FAILURE) {
+                        observe(packet);
+                    }
+                });
+        responses.values().removeIf(packet -> packet.type != MessageType.SUCCESS);
+
+        //This server is one of the acceptors accepting the value; its record
+        //was synced while the replicas synced theirs.
+        if (!syncAcceptor()) {
+            stepDown(entryBallot);
+            return false;
+        }
+
+        if (responses.size() < acceptQuorum) {
+            LOGGER.warning("Slot " + entry.slot + " was accepted by " + responses.size() + " of " + acceptQuorum + " replicas needed");
+            stepDown(entryBallot);
+            return false;
+        }
+        extendLease(sentAt, entryBallot);
+
+        //Slots before this one may still be in flight, so only the
+        //slots up to the first gap are committed.
+        synchronized (this) {
+            accepted.remove(entry.slot);
+            chosen.put(entry.slot, entry);
+            committedSlot = Math.max(committedSlot, appliedSlot);
+            while (chosen.containsKey(committedSlot + 1)) {
+                committedSlot++;
+            }
+            committed = committedSlot;
+        }
+        applyChosen();
+        sendCommit(committed, entry.ballot);
+
+        return awaitApplied(entry.slot, entryBallot);
+    }
+
+    //Waits until a chosen slot is applied, which needs the slots before it
+    //to be chosen as well. Gives up when the leadership of the ballot is
+    //lost, as the slots before it are then decided by the next leader.
+    private synchronized boolean awaitApplied(long slot, long entryBallot) {
+        long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        try {
+            while (appliedSlot < slot && entryBallot == ballot && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return appliedSlot >= slot;
+    }
+
+    //Tells the replicas that the slots up to the given one are chosen,
+    //without waiting for them. A replica answering that it applied fewer
+    //slots is sent the ones it missed, and the lease is extended once an
+    //accept quorum answered with the ballot.
+    private void sendCommit(long committed, long entryBallot) {
+        ServerPacket commit = new ServerPacket();
+        commit.type = MessageType.COMMIT;
+        commit.group = group;
+        commit.ballot = entryBallot;
+        commit.committed = committed;
+        commit.leader = nodeId;
+
+        long sentAt = System.nanoTime();
+        AtomicInteger granted = new AtomicInteger();
+        fanOut.call(replicas, replica -> replica.acceptProposal(commit), packet -> true, 0, (replica, packet) -> {
+            if (packet.type == MessageType.SUCCESS && packet.ballot == entryBallot
+                    && granted.incrementAndGet() == acceptQuorum) {
+                extendLease(sentAt, entryBallot);
+            }
+            if (packet.type == MessageType.SUCCESS && packet.slot < committed) {
+                catchUp(replica, packet.slot, committed);
+            }
+        });
+    }
+
+    //Sends a replica the chosen entries after the last slot it applied.
+    //Catch-ups run one at a time, and one that finds the replica already
+    //sent the slots by an earlier one is skipped.
+    private void catchUp(Replica replica, long replicaApplied, long committed) {
+        synchronized (catchUpLock) {
+            replicaApplied = Math.max(replicaApplied, replicaProgress.getOrDefault(replica, 0L));
+            if (replicaApplied >= committed) {
+                return;
+            }
+
+            ServerPacket commit = new ServerPacket();
+            commit.type = MessageType.COMMIT;
+            commit.group = group;
+            commit.committed = committed;
+            commit.leader = nodeId;
+            synchronized (this) {
+                if (ballot == Ballot.NONE) {
+                    return;
+                }
+                if (chosen.isEmpty() || chosen.firstKey() > replicaApplied + 1) {
+                    LOGGER.warning("Replica " + replica + " applied slot " + replicaApplied
+                            + ", which is older than the slots retained");
+                    return;
+                }
+                commit.ballot = ballot;
+                commit.entries = new ArrayList<>(chosen.subMap(replicaApplied, false, committed, true).values());
+            }
+
+            try {
+                LOGGER.info("Sending replica " + replica + " slots " + (replicaApplied + 1) + " to " + committed);
+                ServerPacket response = Replica.await(replica.acceptProposal(commit));
+                if (response.type == MessageType.SUCCESS) {
+                    replicaProgress.put(replica, response.slot);
+                }
+            } catch (TException e) {
+                LOGGER.warning("Error sending the missed slots to replica " + replica + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends a replica a read found stale the chosen slots it has not
+     * applied. Any server can, as the value chosen for a slot is the same
+     * on every server. The replica is first asked for its last applied slot
+     * with a commit notice that commits nothing.
+     */
+    void repair(Replica replica) {
+        ServerPacket probe = new ServerPacket();
+        probe.type = MessageType.COMMIT;
+        probe.group = group;
+        probe.leader = nodeId;
+
+        try {
+            ServerPacket response = Replica.await(replica.acceptProposal(probe));
+            if (response.type != MessageType.SUCCESS) {
+                return;
+            }
+
+            ServerPacket commit = new ServerPacket();
+            commit.type = MessageType.COMMIT;
+            commit.group = group;
+            commit.leader = nodeId;
+            synchronized (this) {
+                if (response.slot >= appliedSlot) {
+                    return;
+                }
+                if (chosen.isEmpty() || chosen.firstKey() > response.slot + 1) {
+                    LOGGER.warning("Replica " + replica + " applied slot " + response.slot
+                            + ", which is older than the slots retained");
+                    return;
+                }
+                commit.committed = appliedSlot;
+                commit.entries = new ArrayList<>(chosen.subMap(response.slot, false, appliedSlot, true).values());
+            }
+
+            LOGGER.info("Repairing replica " + replica + " with slots " + (response.slot + 1) + " to " + commit.committed);
+            Replica.await(replica.acceptProposal(commit));
+        } catch (TException e) {
+            LOGGER.warning("Error repairing replica " + replica + ": " + e.getMessage());
+        }
+    }
+
+    //Applies the chosen slots that follow the last applied one, in order,
+    //unless another thread holds the apply lock; that thread checks for
+    //slots chosen meanwhile once it lets go, so acceptors do not wait for a
+    //snapshot being written or restored. A slot that fails to apply is
+    //tried again with the next commit.
+    private void applyChosen() {
+        while (applyLock.tryLock()) {
+            boolean applied;
+            try {
+                applied = applyAvailable();
+            } finally {
+                applyLock.unlock();
+            }
+
+            synchronized (this) {
+                if (!applied || !chosen.containsKey(appliedSlot + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    //Applies the chosen slots that follow the last applied one while
+    //holding the apply lock, returning false if one failed to apply.
+    private boolean applyAvailable() {
+        while (true) {
+            LogEntry entry;
+            synchronized (this) {
+                entry = chosen.get(appliedSlot + 1);
+            }
+            if (entry == null) {
+                return true;
+            }
+
+            try {
+                learner.learn(entry.slot, entry.commands);
+            } catch (IOException e) {
+                LOGGER.severe("Error applying slot " + entry.slot + ": " + e.getMessage());
+                return false;
+            }
+
+            synchronized (this) {
+                appliedSlot = entry.slot;
+                accepted.headMap(appliedSlot, true).clear();
+                chosen.headMap(appliedSlot - RETAINED_SLOTS, true).clear();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts catching up from the replicas in the background, unless it is
+     * already doing so.
+     */
+    void startCatchUp() {
+        if (catchingUp.compareAndSet(false, true)) {
+            catchUpExecutor.execute(() -> {
+                try {
+                    catchUpFromReplicas();
+                } finally {
+                    catchingUp.set(false);
+                }
+            });
+        }
+    }
+
+    //Asks the replicas for the slots chosen after the last one applied
+    //here and learns them from the one furthest ahead, until none is
+    //ahead. A replica that no longer retains them sends its snapshot
+    //instead.
+    private void catchUpFromReplicas() {
+        while (true) {
+            ServerPacket request = new ServerPacket();
+            request.type = MessageType.CATCH_UP;
+            request.group = group;
+            request.leader = nodeId;
+            synchronized (this) {
+                request.slot = appliedSlot;
+            }
+
+            Map<Replica, ServerPacket> responses = fanOut.call(replicas, replica -> replica.acceptProposal(request),
+                    packet -> true, replicas.size(), (replica, packet) -> {});
+
+            Replica ahead = null;
+            ServerPacket furthest = null;
+            for (Map.Entry<Replica, ServerPacket> response : responses.entrySet()) {
+                ServerPacket packet = response.getValue();
+                if ((packet.type == MessageType.SUCCESS || packet.type == MessageType.SNAPSHOT)
+                        && packet.slot > request.slot && (furthest == null || packet.slot > furthest.slot)) {
+                    ahead = response.getKey();
+                    furthest = packet;
+                }
+            }
+            if (furthest == null) {
+                return;
+            }
+
+            if (furthest.type == MessageType.SNAPSHOT) {
+                if (stateTransfer == null) {
+                    LOGGER.warning("Replica " + ahead + " no longer retains slot " + (request.slot + 1)
+                            + " and snapshots are disabled");
+                    return;
+                }
+                if (!receiveSnapshot(ahead)) {
+                    return;
+                }
+                continue;
+            }
+
+            if (furthest.entries == null || furthest.entries.isEmpty()) {
+                return;
+            }
+            LOGGER.info("Catching up slots " + (request.slot + 1) + " to "
+                    + furthest.entries.get(furthest.entries.size() - 1).slot + " from replica " + ahead);
+            synchronized (this) {
+                for (LogEntry entry : furthest.entries) {
+                    if (entry.slot > appliedSlot) {
+                        accepted.remove(entry.slot);
+                        chosen.put(entry.slot, entry);
+                    }
+                }
+            }
+            applyChosen();
+
+            synchronized (this) {
+                if (appliedSlot <= request.slot) {
+                    return;
+                }
+            }
+        }
+    }
+
+    //Fetches the snapshot of a replica chunk by chunk into a file and
+    //installs it, returning whether it was installed.
+    private boolean receiveSnapshot(Replica source) {
+        File snapshot;
+        try {
+            snapshot = stateTransfer.createFile();
+        } catch (IOException e) {
+            LOGGER.severe("Error creating a file for a snapshot: " + e.getMessage());
+            return false;
+        }
+
+        try {
+            long slot = fetchSnapshot(source, snapshot);
+            return slot >= 0 && install(slot, snapshot);
+        } finally {
+            delete(snapshot);
+        }
+    }
+
+    //Writes the chunks of the snapshot of a replica to a file, returning
+    //the slot it was taken at, or -1 if it could not be fetched whole.
+    private long fetchSnapshot(Replica source, File snapshot) {
+        long slot = 0;
+        long offset = 0;
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(snapshot))) {
+            while (true) {
+                ServerPacket request = new ServerPacket();
+                request.type = MessageType.SNAPSHOT;
+                request.group = group;
+                request.leader = nodeId;
+                request.slot = slot;
+                request.offset = offset;
+
+                ServerPacket response;
+                try {
+                    response = Replica.await(source.acceptProposal(request));
+                } catch (TException e) {
+                    LOGGER.warning("Error fetching a snapshot from replica " + source + ": " + e.getMessage());
+                    return -1;
+                }
+                if (response.type != MessageType.SNAPSHOT || (request.offset > 0 && response.slot != slot)) {
+                    LOGGER.warning("Replica " + source + " stopped sending its snapshot");
+                    return -1;
+                }
+
+                slot = response.slot;
+                byte[] chunk = response.getChunk();
+                if (chunk == null || chunk.length == 0) {
+                    return slot;
+                }
+                stream.write(chunk, 0, chunk.length);
+                offset += chunk.length;
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Error writing the snapshot of replica " + source + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    //Replaces the local state with a snapshot taken at a slot, unless this
+    //server applied that slot meanwhile, then applies the slots chosen
+    //since.
+    private boolean install(long slot, File snapshot) {
+        applyLock.lock();
+        try {
+            synchronized (this) {
+                if (slot <= appliedSlot) {
+                    return true;
+                }
+            }
+
+            LOGGER.info("Installing a snapshot of slot " + slot + ", " + snapshot.length() + " bytes");
+            stateTransfer.restore(snapshot, slot);
+            synchronized (this) {
+                appliedSlot = slot;
+                committedSlot = Math.max(committedSlot, slot);
+                accepted.headMap(slot, true).clear();
+                chosen.headMap(slot, true).clear();
+                notifyAll();
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Error installing a snapshot of slot " + slot + ": " + e.getMessage());
+            return false;
+        } finally {
+            applyLock.unlock();
+        }
+
+        applyChosen();
+        return true;
+    }
+
+    //Deletes a snapshot file once it was sent or installed.
+    private static void delete(File snapshot) {
+        try {
+            Files.deleteIfExists(snapshot.toPath());
+        } catch (IOException e) {
+            LOGGER.warning("Error deleting the snapshot file " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a request of the leader or of a server trying to become it:
+     * a prepare request, an accept request or a commit notice; or of a
+     * server catching up: a request for the slots it missed or for a chunk
+     * of the snapshot.
+     */
+    ServerPacket handle(ServerPacket packet) {
+        if (packet.type == MessageType.PROPOSAL) {
+            return promise(packet);
+        } else if (packet.type == MessageType.ACCEPT_REQUEST) {
+            return acceptRequest(packet);
+        } else if (packet.type == MessageType.COMMIT) {
+            return commit(packet);
+        } else if (packet.type == MessageType.CATCH_UP) {
+            return missedSlots(packet);
+        } else if (packet.type == MessageType.SNAPSHOT) {
+            return snapshotChunk(packet);
+        }
+        return refusal();
+    }
+
+    //Reports the last applied slot to a server that applied the requested
+    //one, with the chosen slots after it, or tells it to fetch the
+    //snapshot if they are no longer retained.
+    private synchronized ServerPacket missedSlots(ServerPacket request) {
+        ServerPacket response = new ServerPacket();
+        response.type = MessageType.SUCCESS;
+        response.slot = appliedSlot;
+        if (request.slot >= appliedSlot) {
+            return response;
+        }
+
+        if (chosen.isEmpty() || chosen.firstKey() > request.slot + 1) {
+            response.type = MessageType.SNAPSHOT;
+            return response;
+        }
+        response.entries = new ArrayList<>();
+        for (LogEntry entry : chosen.subMap(request.slot, false, appliedSlot, true).values()) {
+            if (response.entries.size() == CATCH_UP_SLOTS) {
+                break;
+            }
+            response.entries.add(entry);
+        }
+        return response;
+    }
+
+    //Sends a server the chunk of the snapshot at the requested offset. The
+    //snapshot is written to a file when the server asks for the first chunk,
+    //and the file is deleted once it was sent whole, the server starts over
+    //or stops asking for longer than the timeout. An empty chunk ends the
+    //snapshot.
+    private ServerPacket snapshotChunk(ServerPacket request) {
+        ServerPacket response = new ServerPacket();
+        response.type = MessageType.FAILURE;
+        if (stateTransfer == null) {
+            return response;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, Transfer> entry : transfers.entrySet()) {
+            if (now - entry.getValue().lastRequest > timeout) {
+                drop(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Transfer transfer;
+        if (request.offset == 0) {
+            transfer = writeSnapshot();
+            if (transfer == null) {
+                return response;
+            }
+            Transfer previous = transfers.put(request.leader, transfer);
+            if (previous != null) {
+                delete(previous.snapshot);
+            }
+        } else {
+            transfer = transfers.get(request.leader);
+            if (transfer == null || transfer.slot != request.slot || request.offset > transfer.length) {
+                return response;
+            }
+        }
+        transfer.lastRequest = now;
+
+        long from = request.offset;
+        byte[] chunk = new byte[(int) Math.min(chunkBytes, transfer.length - from)];
+        if (from == transfer.length) {
+            drop(request.leader, transfer);
+        } else {
+            try (RandomAccessFile file = new RandomAccessFile(transfer.snapshot, "r")) {
+                file.seek(from);
+                file.readFully(chunk);
+            } catch (IOException e) {
+                LOGGER.severe("Error reading the snapshot sent to server " + request.leader + ": " + e.getMessage());
+                drop(request.leader, transfer);
+                return response;
+            }
+        }
+        response.type = MessageType.SNAPSHOT;
+        response.slot = transfer.slot;
+        response.offset = from;
+        response.setChunk(chunk);
+        return response;
+    }
+
+    //Stops sending a snapshot to a server and deletes its file.
+    private void drop(int server, Transfer transfer) {
+        if (transfers.remove(server, transfer)) {
+            delete(transfer.snapshot);
+        }
+    }
+
+    //Writes the local state as of the last applied slot to a file, holding
+    //the apply lock so no slot is applied meanwhile. Null if it could not be
+    //written.
+    private Transfer writeSnapshot() {
+        Transfer transfer;
+        File snapshot = null;
+        applyLock.lock();
+        try {
+            long slot;
+            synchronized (this) {
+                slot = appliedSlot;
+            }
+            snapshot = stateTransfer.createFile();
+            try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(snapshot))) {
+                stateTransfer.write(stream);
+            }
+            transfer = new Transfer(slot, snapshot);
+            LOGGER.info("Wrote a snapshot of slot " + slot + ", " + transfer.length + " bytes");
+        } catch (IOException e) {
+            LOGGER.severe("Error writing a snapshot: " + e.getMessage());
+            if (snapshot != null) {
+                delete(snapshot);
+            }
+            return null;
+        } finally {
+            applyLock.unlock();
+        }
+
+        applyChosen();
+        return transfer;
+    }
+
+    //Refusal carrying the highest ballot promised and its server, so the
+    //sender learns who the leader is.
+    private synchronized ServerPacket refusal() {
+        ServerPacket response = new ServerPacket();
+        response.type = MessageType.FAILURE;
+        response.ballot = promised;
+        response.leader = promisedLeader;
+        response.slot = appliedSlot;
+        return response;
+    }
+
+    //Promises a ballot higher than any promised before, reporting the
+    //values accepted or chosen from the requested slot on. The promise is
+    //durable before it is sent.
+    private ServerPacket promise(ServerPacket prepare) {
+        ServerPacket response = new ServerPacket();
+        synchronized (this) {
+            if (prepare.ballot <= promised || (grantsLease() && leaseGrantee != prepare.leader)) {
+                return refusal();
+            }
+
+            promised = prepare.ballot;
+            promisedLeader = prepare.leader;
+            loseLeadership();
+            try {
+                acceptorLog.promise(prepare.ballot, prepare.leader);
+            } catch (IOException e) {
+                LOGGER.severe("Error recording the promise of ballot " + Ballot.toString(prepare.ballot) + ": " + e.getMessage());
+                return refusal();
+            }
+
+            response.type = MessageType.PROMISE;
+            response.ballot = prepare.ballot;
+            response.slot = appliedSlot;
+            response.entries = new ArrayList<>(chosen.tailMap(prepare.slot).values());
+            response.entries.addAll(accepted.tailMap(prepare.slot).values());
+        }
+
+        return syncAcceptor() ? response : refusal();
+    }
+
+    //Accepts a value unless a higher ballot was promised, then applies
+    //the slots the request reports as committed. A higher ballot and the
+    //value are durable before the acceptance is sent.
+    private ServerPacket acceptRequest(ServerPacket request) {
+        boolean recorded = false;
+        synchronized (this) {
+            if (request.ballot < promised) {
+                return refusal();
+            }
+
+            try {
+                if (request.ballot != promised) {
+                    loseLeadership();
+                    acceptorLog.promise(request.ballot, request.leader);
+                    recorded = true;
+                }
+                promised = request.ballot;
+                promisedLeader = request.leader;
+                if (request.slot > appliedSlot && !chosen.containsKey(request.slot)) {
+                    LogEntry entry = entry(request.slot, request.ballot, request.commands);
+                    accepted.put(request.slot, entry);
+                    acceptorLog.accept(entry);
+                    recorded = true;
+                }
+            } catch (IOException e) {
+                LOGGER.severe("Error recording the value of slot " + request.slot + ": " + e.getMessage());
+                return refusal();
+            }
+        }
+
+        if (recorded && !syncAcceptor()) {
+            return refusal();
+        }
+        return commit(request);
+    }
+
+    //Waits for the acceptor state recorded so far to become durable,
+    //returning false if it could not be synced.
+    private boolean syncAcceptor() {
+        try {
+            acceptorLog.sync();
+            return true;
+        } catch (IOException e) {
+            LOGGER.severe("Error syncing the acceptor state: " + e.getMessage());
+            return false;
+        }
+    }
+
+    //Marks the slots up to the committed one as chosen and applies them.
+    //Only values accepted with the leader's ballot are known to be the
+    //chosen ones; the others are sent by the leader as entries. A server
+    //further behind than the retained slots catches up on its own.
+    private ServerPacket commit(ServerPacket commit) {
+        synchronized (this) {
+            if (commit.ballot != Ballot.NONE && commit.ballot == promised && ballot == Ballot.NONE) {
+                grantLease(commit.leader);
+            }
+            if (commit.entries != null) {
+                for (LogEntry entry : commit.entries) {
+                    if (entry.slot > appliedSlot) {
+                        accepted.remove(entry.slot);
+                        chosen.put(entry.slot, entry);
+                    }
+                }
+            }
+
+            for (LogEntry entry : new ArrayList<>(accepted.headMap(commit.committed, true).values())) {
+                if (entry.ballot == commit.ballot) {
+                    accepted.remove(entry.slot);
+                    chosen.put(entry.slot, entry);
+                }
+            }
+        }
+        applyChosen();
+
+        ServerPacket response = new ServerPacket();
+        response.type = MessageType.SUCCESS;
+        synchronized (this) {
+            response.slot = appliedSlot;
+            response.ballot = promised;
+        }
+        if (commit.committed - response.slot > RETAINED_SLOTS) {
+            startCatchUp();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,194 @@
+package com.northeastern.edu.utils;
+
+import generated.thrift.impl.Command;
+import generated.thrift.impl.OperationType;
+import org.apache.thrift.TException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Merges the writes, deletes and logins requested concurrently into one
+ * proposal, so a single consensus round decides all of them.
+ *
+ * Requests queue up while a round is in progress, and the next batch takes
+ * all of them, up to the maximum size. A batch is also held open for a short
+ * window after its first request, so requests arriving close together share
+ * a round even when none is in progress. Each caller waits until the batch
+ * holding its request is decided, and learns whether it was.
+ *
+ * Up to a window of batches are proposed at once. While the window is full,
+ * requests keep queueing and the next batch takes them once a proposal in
+ * flight finishes.
+ */
+class ProposalBatcher {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(ProposalBatcher.class.getName());
+
+    /**
+     * Decides a batch of requests in one consensus round.
+     */
+    interface Proposer {
+        boolean propose(List<Command> commands) throws TException;
+    }
+
+    //Request waiting for its batch to be decided.
+    private static final class Pending {
+        private final Command command;
+        private final CompletableFuture<Boolean> decided = new CompletableFuture<>();
+
+        Pending(Command command) {
+            this.command = command;
+        }
+    }
+
+    //Requests waiting for the next batch, in the order they arrived.
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    //Decides the batches.
+    private final Proposer proposer;
+
+    //Maximum number of requests in a batch.
+    private final int maxBatchSize;
+
+    //Time a batch is held open for more requests, in nanoseconds.
+    private final long windowNanos;
+
+    //Free places in the window of batches in flight.
+    private final Semaphore inFlight;
+
+    //Proposes the batches in flight.
+    private final ExecutorService executor;
+
+    /**
+     * @param proposer     Decides the batches.
+     * @param maxBatchSize Maximum number of requests in a batch.
+     * @param windowMillis Time a batch is held open for more requests.
+     * @param maxInFlight  Maximum number of batches proposed at once.
+     */
+    ProposalBatcher(Proposer proposer, int maxBatchSize, long windowMillis, int maxInFlight) {
+        this.proposer = proposer;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.inFlight = new Semaphore(maxInFlight);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "proposal-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread thread = new Thread(this::run, "proposal-batcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds a request to the next batch and waits for the batch to be decided.
+     *
+     * @return Whether the batch holding the request was decided.
+     */
+    boolean submit(OperationType operationType, Map<String, String> value) throws TException {
+        Command command = new Command();
+        command.operationType = operationType;
+        command.value = value;
+
+        Pending pending = new Pending(command);
+        queue.add(pending);
+
+        try {
+            return pending.decided.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TException("Interrupted while waiting for the request to be decided", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TException) {
+                throw (TException) e.getCause();
+            }
+            throw new TException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    //Forms the batches, and hands each to a proposal thread once the window
+    //has room for it.
+    private void run() {
+        try {
+            while (true) {
+                inFlight.acquire();
+                List<Pending> batch = nextBatch();
+                executor.execute(() -> {
+                    try {
+                        propose(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info("Proposal batcher stopped");
+        }
+    }
+
+    //Proposes a batch and completes its requests with the outcome. The
+    //requests are completed even when the proposal fails with an error, so
+    //no request thread waits on them forever; the error is then rethrown.
+    private void propose(List<Pending> batch) {
+        List<Command> commands = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            commands.add(pending.command);
+        }
+
+        try {
+            boolean decided = proposer.propose(commands);
+            for (Pending pending : batch) {
+                pending.decided.complete(decided);
+            }
+        } catch (Throwable e) {
+            LOGGER.severe("Error deciding a batch of " + batch.size() + " requests: " + e);
+            for (Pending pending : batch) {
+                pending.decided.completeExceptionally(e);
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    //Waits for a request, then collects the requests queued or arriving
+    //within the window, up to the maximum size.
+    private List<Pending> nextBatch() throws InterruptedException {
+        List<Pending> batch = new ArrayList<>();
+        batch.add(queue.take());
+
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+
+        return batch;
+    }
+}
@@ -0,0 +1,78 @@
+package com.northeastern.edu.utils;
+
+import java.util.logging.Logger;
+
+/**
+ * Number of servers, out of all servers of the cluster, each phase needs
+ * to hear from. Following Flexible Paxos, the prepare and accept quorums
+ * need not be majorities as long as every prepare quorum meets every accept
+ * quorum, that is prepare + accept > servers; a small accept quorum makes
+ * each write cheaper, at the cost of a larger prepare quorum for a change
+ * of leader. A read quorum meets every accept quorum the same way.
+ *
+ * Each size left at 0 in the configuration is a majority. A configuration
+ * breaking a rule is not used; the majorities are used instead.
+ */
+final class Quorums {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(Quorums.class.getName());
+
+    //Servers a prepare round, an accept round and a read need.
+    private final int prepare;
+    private final int accept;
+    private final int read;
+
+    private Quorums(int prepare, int accept, int read) {
+        this.prepare = prepare;
+        this.accept = accept;
+        this.read = read;
+    }
+
+    /**
+     * Quorums configured for a cluster, or majorities if the configured
+     * sizes do not intersect.
+     *
+     * @param servers Number of servers of the cluster, this one included.
+     */
+    static Quorums configure(int servers) {
+        int majority = servers / 2 + 1;
+        int prepare = orMajority(ServerConfiguration.prepareQuorum(), majority);
+        int accept = orMajority(ServerConfiguration.acceptQuorum(), majority);
+        int read = orMajority(ServerConfiguration.readQuorum(), majority);
+
+        if (prepare > servers || accept > servers || read > servers) {
+            LOGGER.severe("Quorums " + prepare + "/" + accept + "/" + read + " exceed the " + servers
+                    + " servers, using majorities");
+            return new Quorums(majority, majority, majority);
+        }
+        if (prepare + accept <= servers || read + accept <= servers) {
+            LOGGER.severe("Quorums " + prepare + "/" + accept + "/" + read + " do not intersect among "
+                    + servers + " servers, using majorities");
+            return new Quorums(majority, majority, majority);
+        }
+
+        LOGGER.info("Quorums of " + servers + " servers: prepare " + prepare + ", accept " + accept
+                + ", read " + read);
+        return new Quorums(prepare, accept, read);
+    }
+
+    private static int orMajority(int size, int majority) {
+        return size <= 0 ? majority : size;
+    }
+
+    //Servers a prepare round needs, this one included.
+    int prepare() {
+        return prepare;
+    }
+
+    //Servers an accept round needs, this one included.
+    int accept() {
+        return accept;
+    }
+
+    //Servers agreeing on a value a read needs, this one included.
+    int read() {
+        return read;
+    }
+}
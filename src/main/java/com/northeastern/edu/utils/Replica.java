@@ -0,0 +1,303 @@
+package com.northeastern.edu.utils;
+
+import generated.thrift.impl.CommunicationService;
+import generated.thrift.impl.MessageType;
+import generated.thrift.impl.OperationType;
+import generated.thrift.impl.RequestPacket;
+import generated.thrift.impl.ServerPacket;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Connections to a replica server.
+ *
+ * The consensus messages, reads of stored values and pings go over
+ * non-blocking connections and return futures: the selector thread of the
+ * client manager sends them and completes the futures, so no thread waits
+ * for a replica to answer. A thrift client carries one call at a time, so
+ * each call takes a connection of its own from a pool; once all of them
+ * are in use, calls queue and are sent in order as connections are
+ * returned.
+ *
+ * The client requests forwarded to the replica can wait for a whole round
+ * to be decided there, so they go over a separate pool of blocking
+ * connections instead of holding up the consensus messages.
+ *
+ * A connection a call fails on is closed; the next call opens a new one.
+ */
+class Replica {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(Replica.class.getName());
+
+    /**
+     * Call made over a non-blocking connection.
+     */
+    private interface AsyncCall<R> {
+        void call(CommunicationService.AsyncClient client, AsyncMethodCallback<R> callback) throws TException;
+    }
+
+    /**
+     * Request forwarded over a blocking connection.
+     */
+    private interface ForwardCall<R> {
+        R call(CommunicationService.Client client) throws TException;
+    }
+
+    //Call waiting for a non-blocking connection, and its outcome.
+    private static final class Pending<R> {
+        private final AsyncCall<R> call;
+        private final CompletableFuture<R> response = new CompletableFuture<>();
+
+        Pending(AsyncCall<R> call) {
+            this.call = call;
+        }
+    }
+
+    //Non-blocking connection.
+    private static final class AsyncConnection {
+        private final TNonblockingSocket transport;
+        private final CommunicationService.AsyncClient client;
+
+        AsyncConnection(TNonblockingSocket transport, CommunicationService.AsyncClient client) {
+            this.transport = transport;
+            this.client = client;
+        }
+    }
+
+    //Blocking connection.
+    private static final class Connection {
+        private final TTransport transport;
+        private final CommunicationService.Client client;
+
+        Connection(TTransport transport, CommunicationService.Client client) {
+            this.transport = transport;
+            this.client = client;
+        }
+    }
+
+    //Address of the replica.
+    private final String hostAddress;
+    private final Integer port;
+
+    //Timeout of a call in milliseconds.
+    private final int timeout;
+
+    //Runs the non-blocking connections of all replicas.
+    private final TAsyncClientManager clientManager;
+
+    //Non-blocking connections for the consensus messages.
+    private final ConnectionPool<AsyncConnection> asyncConnections;
+
+    //Calls waiting for a non-blocking connection, in order. Guarded by
+    //this replica.
+    private final Queue<Pending<?>> queue = new ArrayDeque<>();
+
+    //Blocking connections for the forwarded requests.
+    private final ConnectionPool<Connection> connections;
+
+    /**
+     * @param hostAddress   Address of the replica.
+     * @param port          Port the replica listens on for other servers.
+     * @param timeout       Timeout of a call in milliseconds.
+     * @param clientManager Runs the non-blocking connections.
+     * @param poolSize      Most connections of each kind open at once.
+     * @param idleMillis    Time a connection may stay idle before it is closed.
+     */
+    Replica(String hostAddress, Integer port, int timeout, TAsyncClientManager clientManager,
+            int poolSize, long idleMillis) {
+        this.hostAddress = hostAddress;
+        this.port = port;
+        this.timeout = timeout;
+        this.clientManager = clientManager;
+        this.asyncConnections = new ConnectionPool<>(toString(), poolSize, idleMillis, this::connectAsync,
+                connection -> !connection.client.hasError() && connection.transport.isOpen(),
+                connection -> connection.transport.close());
+        this.connections = new ConnectionPool<>(toString(), poolSize, idleMillis, this::connect,
+                connection -> connection.transport.isOpen(), connection -> connection.transport.close());
+    }
+
+    //Port the replica listens on for other servers, which identifies it.
+    Integer getPort() {
+        return port;
+    }
+
+    /**
+     * Waits for the response of a call, for the callers that need it
+     * before going on. Must not run on the selector thread.
+     */
+    static <R> R await(CompletableFuture<R> response) throws TException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TException("Interrupted while waiting for a replica", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TException) {
+                throw (TException) e.getCause();
+            }
+            throw new TException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    //Checks that the replica is reachable, connecting to it if needed.
+    //Completes with false instead of failing.
+    CompletableFuture<Boolean> ping() {
+        return send(CommunicationService.AsyncClient::ping).handle((response, error) -> {
+            if (error != null) {
+                LOGGER.warning("Error pinging replica server on port: " + port + ": " + error.getMessage());
+                return false;
+            }
+            return response == MessageType.SUCCESS;
+        });
+    }
+
+    //Sends a proposal, an accept request or a commit notice to the replica.
+    CompletableFuture<ServerPacket> acceptProposal(ServerPacket packet) {
+        return send((client, callback) -> client.acceptProposal(packet, callback));
+    }
+
+    //Reads the value the replica stores for a key.
+    CompletableFuture<String> getStoredValue(String key) {
+        return send((client, callback) -> client.getStoredValue(key, callback));
+    }
+
+    //Queues a call for a non-blocking connection, and sends the queued
+    //calls there are connections for.
+    private <R> CompletableFuture<R> send(AsyncCall<R> call) {
+        Pending<R> pending = new Pending<>(call);
+        synchronized (this) {
+            queue.add(pending);
+        }
+        sendQueued();
+        return pending.response;
+    }
+
+    //Sends queued calls, in order, while connections are free. Runs on the
+    //thread that queued a call, or on the selector thread once a call is
+    //answered and its connection returned.
+    private void sendQueued() {
+        while (true) {
+            Pending<?> pending;
+            AsyncConnection connection;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                try {
+                    connection = asyncConnections.tryCheckout();
+                } catch (TException e) {
+                    queue.poll().response.completeExceptionally(e);
+                    continue;
+                }
+                if (connection == null) {
+                    return;
+                }
+                pending = queue.poll();
+            }
+            start(pending, connection);
+        }
+    }
+
+    //Starts a call on a connection checked out for it.
+    private <R> void start(Pending<R> pending, AsyncConnection connection) {
+        try {
+            pending.call.call(connection.client, new AsyncMethodCallback<R>() {
+                @Override
+                public void onComplete(R response) {
+                    asyncConnections.release(connection);
+                    sendQueued();
+                    pending.response.complete(response);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    asyncConnections.invalidate(connection);
+                    sendQueued();
+                    pending.response.completeExceptionally(e instanceof TException ? e : new TTransportException(e));
+                }
+            });
+        } catch (TException | RuntimeException e) {
+            asyncConnections.invalidate(connection);
+            pending.response.completeExceptionally(e instanceof TException ? e : new TTransportException(e));
+        }
+    }
+
+    //Opens a non-blocking connection. It is made by the selector thread
+    //along with the first call.
+    private AsyncConnection connectAsync() throws TException {
+        try {
+            TNonblockingSocket transport = new TNonblockingSocket(hostAddress, port, timeout);
+            CommunicationService.AsyncClient client =
+                    new CommunicationService.AsyncClient(new TBinaryProtocol.Factory(), clientManager, transport);
+            client.setTimeout(timeout);
+            return new AsyncConnection(transport, client);
+        } catch (IOException e) {
+            throw new TTransportException(e);
+        }
+    }
+
+    //Opens a blocking connection.
+    private Connection connect() throws TTransportException {
+        TTransport transport = new TFramedTransport(new TSocket(hostAddress, port, timeout));
+        transport.open();
+        return new Connection(transport, new CommunicationService.Client(new TBinaryProtocol(transport)));
+    }
+
+    //Forwards a request over a blocking connection of its own. A failure
+    //other than an error reported by the replica closes the connection.
+    private <R> R forward(ForwardCall<R> call) throws TException {
+        Connection connection = connections.checkout(timeout);
+        boolean usable = false;
+        try {
+            R response = call.call(connection.client);
+            usable = true;
+            return response;
+        } catch (TApplicationException e) {
+            usable = true;
+            throw e;
+        } finally {
+            if (usable) {
+                connections.release(connection);
+            } else {
+                connections.invalidate(connection);
+            }
+        }
+    }
+
+    //Forwards a read of a client to the replica.
+    RequestPacket getValueForKey(String key) throws TException {
+        return forward(client -> client.getValueForKey(key));
+    }
+
+    //Forwards a write or login of a client to the replica.
+    RequestPacket storeKeyValue(Map<String, String> keyValue, OperationType operationType) throws TException {
+        return forward(client -> client.storeKeyValue(keyValue, operationType));
+    }
+
+    //Forwards a delete or logout of a client to the replica.
+    RequestPacket deleteKey(String key, OperationType operationType) throws TException {
+        return forward(client -> client.deleteKey(key, operationType));
+    }
+
+    @Override
+    public String toString() {
+        return hostAddress + ":" + port;
+    }
+}
@@ -0,0 +1,210 @@
+package com.northeastern.edu.utils;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Tracks in the background whether the replicas are up, so requests read
+ * the current view instead of pinging every replica first.
+ *
+ * Each replica is pinged once per heartbeat interval. Whether it is up is
+ * judged with a phi accrual failure detector: the intervals between the
+ * heartbeats it answered give their mean and deviation, and phi measures
+ * how unlikely it is, given those, that the next heartbeat is still
+ * missing after the time passed since the last one. The replica counts as
+ * down once phi passes the threshold, or as soon as a ping fails. The
+ * round-trip time of the pings is kept as a smoothed estimate.
+ *
+ * A replica that is down, including one that was never reached, is pinged
+ * again after a backoff that doubles with each failure up to a maximum, and
+ * counts as up again once it answers. Replicas are assumed up until their
+ * first ping fails.
+ */
+class ReplicaHealth {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(ReplicaHealth.class.getName());
+
+    //Number of heartbeat intervals the mean and deviation are taken over.
+    private static final int SAMPLES = 100;
+
+    /**
+     * Heartbeat history of one replica. Guarded by itself.
+     */
+    private static final class Health {
+
+        //Intervals between the last heartbeats answered, in milliseconds,
+        //and their running sums.
+        private final Deque<Long> intervals = new ArrayDeque<>();
+        private double sum;
+        private double squaredSum;
+
+        //When the last heartbeat was answered, or 0 if none since the
+        //replica came up.
+        private long lastHeartbeat;
+
+        //Whether the last ping failed, and the failures in a row.
+        private boolean failed;
+        private int failures;
+
+        //Smoothed round-trip time in milliseconds, or -1 if not measured.
+        private double rtt = -1;
+    }
+
+    //History of each replica.
+    private final Map<Replica, Health> health = new LinkedHashMap<>();
+
+    //Heartbeat interval, maximum backoff and lowest deviation assumed, in
+    //milliseconds.
+    private final long intervalMillis;
+    private final long maxBackoffMillis;
+    private final double minDeviation;
+
+    //Phi above which a replica counts as down.
+    private final double threshold;
+
+    //Sends the heartbeats.
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts pinging the replicas.
+     *
+     * @param replicas         Replicas to track.
+     * @param intervalMillis   Time between two heartbeats of a replica.
+     * @param threshold        Phi above which a replica counts as down.
+     * @param maxBackoffMillis Longest time between two pings of a replica
+     *                         that is down.
+     */
+    ReplicaHealth(Collection<Replica> replicas, long intervalMillis, double threshold, long maxBackoffMillis) {
+        this.intervalMillis = intervalMillis;
+        this.threshold = threshold;
+        this.maxBackoffMillis = Math.max(intervalMillis, maxBackoffMillis);
+        this.minDeviation = intervalMillis / 4.0;
+
+        for (Replica replica : replicas) {
+            health.put(replica, new Health());
+        }
+        for (Replica replica : replicas) {
+            scheduler.execute(() -> heartbeat(replica));
+        }
+    }
+
+    /**
+     * Whether a replica is up as of the last heartbeats.
+     */
+    boolean isAvailable(Replica replica) {
+        return phi(replica) < threshold;
+    }
+
+    /**
+     * Suspicion that a replica is down: 0 right after a heartbeat, growing
+     * as the next one is overdue. Infinite once a ping failed.
+     */
+    double phi(Replica replica) {
+        Health replicaHealth = health.get(replica);
+        synchronized (replicaHealth) {
+            if (replicaHealth.failed) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (replicaHealth.lastHeartbeat == 0 || replicaHealth.intervals.isEmpty()) {
+                return 0;
+            }
+
+            int count = replicaHealth.intervals.size();
+            double mean = replicaHealth.sum / count;
+            double variance = replicaHealth.squaredSum / count - mean * mean;
+            double deviation = Math.max(Math.sqrt(Math.max(variance, 0)), minDeviation);
+            long elapsed = System.currentTimeMillis() - replicaHealth.lastHeartbeat;
+            return phi(elapsed, mean, deviation);
+        }
+    }
+
+    //Smoothed round-trip time of the pings to a replica in milliseconds,
+    //or -1 if none was answered yet.
+    double rttMillis(Replica replica) {
+        Health replicaHealth = health.get(replica);
+        synchronized (replicaHealth) {
+            return replicaHealth.rtt;
+        }
+    }
+
+    //Phi of a heartbeat overdue by the given time, with the normal
+    //distribution approximated by a logistic function.
+    private static double phi(long elapsed, double mean, double deviation) {
+        double y = (elapsed - mean) / deviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1 + e));
+        }
+        return -Math.log10(1 - 1 / (1 + e));
+    }
+
+    //Pings a replica, and schedules the next ping once it is answered. A
+    //replica that does not answer is not pinged again meanwhile, and its
+    //phi keeps growing.
+    private void heartbeat(Replica replica) {
+        long sentAt = System.nanoTime();
+        replica.ping().whenComplete((up, error) -> {
+            long delay = record(replica, up != null && up, System.nanoTime() - sentAt);
+            scheduler.schedule(() -> heartbeat(replica), delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    //Records the outcome of a ping, and returns the time until the next.
+    private long record(Replica replica, boolean up, long rttNanos) {
+        Health replicaHealth = health.get(replica);
+        synchronized (replicaHealth) {
+            long now = System.currentTimeMillis();
+
+            if (!up) {
+                if (!replicaHealth.failed) {
+                    LOGGER.warning("Replica " + replica + " is down");
+                }
+                replicaHealth.failed = true;
+                replicaHealth.failures++;
+                replicaHealth.lastHeartbeat = 0;
+                replicaHealth.intervals.clear();
+                replicaHealth.sum = 0;
+                replicaHealth.squaredSum = 0;
+                int doublings = Math.min(replicaHealth.failures - 1, 20);
+                return Math.min(intervalMillis << doublings, maxBackoffMillis);
+            }
+
+            if (replicaHealth.failed) {
+                LOGGER.info("Replica " + replica + " is up again after " + replicaHealth.failures + " failed pings,"
+                        + " round trip " + (rttNanos / 1000000) + "ms");
+            }
+            replicaHealth.failed = false;
+            replicaHealth.failures = 0;
+
+            if (replicaHealth.lastHeartbeat != 0) {
+                long interval = now - replicaHealth.lastHeartbeat;
+                replicaHealth.intervals.addLast(interval);
+                replicaHealth.sum += interval;
+                replicaHealth.squaredSum += (double) interval * interval;
+                if (replicaHealth.intervals.size() > SAMPLES) {
+                    long oldest = replicaHealth.intervals.removeFirst();
+                    replicaHealth.sum -= oldest;
+                    replicaHealth.squaredSum -= (double) oldest * oldest;
+                }
+            }
+            replicaHealth.lastHeartbeat = now;
+
+            //Smoothed the way TCP smooths its round-trip time.
+            double rtt = rttNanos / 1e6;
+            replicaHealth.rtt = replicaHealth.rtt < 0 ? rtt : 0.875 * replicaHealth.rtt + 0.125 * rtt;
+            return intervalMillis;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.northeastern.edu.utils;
+
+import com.northeastern.edu.secretSharing.SecretSplitter;
+import com.northeastern.edu.storage.GroupCommit;
+import com.northeastern.edu.storage.KeyValueStore;
+
+import java.util.logging.Logger;
+
+/**
+ * Tunable settings of the server, read from system properties
+ * (for example -Dstorage.durability=per-write). Every setting
+ * has a default so the server runs without any of them.
+ */
+public final class ServerConfiguration {
+
+    //Logger for the class.
+    private static Logger LOGGER = Logger.getLogger(ServerConfiguration.class.getName());
+
+    private ServerConfiguration() {
+    }
+
+    /**
+     * How accepted mutations are made durable before they are
+     * acknowledged: none, batched or per-write.
+     */
+    public static GroupCommit.Durability durability() {
+        String value = System.getProperty("storage.durability", "batched");
+        try {
+            return GroupCommit.Durability.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Unknown storage.durability: " + value + ", using batched");
+            return GroupCommit.Durability.BATCHED;
+        }
+    }
+
+    /**
+     * Seconds between two checks for whether a snapshot is due.
+     */
+    public static long snapshotIntervalSeconds() {
+        return longProperty("storage.snapshot.interval", 60);
+    }
+
+    /**
+     * Mutations logged since the last snapshot before a new one is taken.
+     */
+    public static long snapshotMinimumMutations() {
+        return longProperty("storage.snapshot.mutations", 10000);
+    }
+
+    /**
+     * Where the key-value pairs are kept: heap, mapped or off-heap.
+     */
+    public static KeyValueStore.Engine storageEngine() {
+        String value = System.getProperty("storage.engine", "heap");
+        try {
+            return KeyValueStore.Engine.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Unknown storage.engine: " + value + ", using heap");
+            return KeyValueStore.Engine.HEAP;
+        }
+    }
+
+    /**
+     * Size in megabytes of a segment file of the mapped engine, or of a
+     * slab of the off-heap engine.
+     */
+    public static int segmentSize() {
+        long megabytes = Math.max(1, Math.min(longProperty("storage.segment.size", 64), 1024));
+        return (int) megabytes * 1024 * 1024;
+    }
+
+    /**
+     * Number of hash partitions the server state is split into. Defaults
+     * to the number of processors, at most 8.
+     */
+    public static int storagePartitions() {
+        long defaultPartitions = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        return (int) Math.max(1, Math.min(longProperty("storage.partitions", defaultPartitions), 256));
+    }
+
+    /**
+     * Milliseconds to wait for a replica to answer a call, and for a
+     * majority of the replicas to answer a round.
+     */
+    public static int replicaTimeoutMillis() {
+        return (int) Math.max(1, Math.min(longProperty("replica.timeout", 5000), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Most connections to a replica open at once, for the consensus
+     * messages and for the forwarded requests each.
+     */
+    public static int replicaConnections() {
+        return (int) Math.max(1, Math.min(longProperty("replica.connections", 4), 64));
+    }
+
+    /**
+     * Milliseconds a connection to a replica may stay idle before it is closed.
+     */
+    public static long connectionIdleMillis() {
+        return Math.max(100, longProperty("replica.idle", 60000));
+    }
+
+    /**
+     * Milliseconds between two heartbeats sent to a replica.
+     */
+    public static long heartbeatMillis() {
+        return Math.max(10, longProperty("replica.heartbeat", 1000));
+    }
+
+    /**
+     * Phi of the failure detector above which a replica counts as down.
+     */
+    public static double phiThreshold() {
+        return Math.max(1, longProperty("replica.phi", 8));
+    }
+
+    /**
+     * Longest time in milliseconds between two pings of a replica that is
+     * down; the time doubles from one heartbeat interval with each failure.
+     */
+    public static long maxBackoffMillis() {
+        return Math.max(0, longProperty("replica.backoff", 30000));
+    }
+
+    /**
+     * Whether writes are decided by Multi-Paxos with a stable leader
+     * (paxos.mode=multi) or by a full Paxos round each (paxos.mode=basic).
+     */
+    public static boolean multiPaxos() {
+        String value = System.getProperty("paxos.mode", "multi").trim();
+        if (!value.equalsIgnoreCase("multi") && !value.equalsIgnoreCase("basic")) {
+            LOGGER.warning("Unknown paxos.mode: " + value + ", using multi");
+        }
+        return !value.equalsIgnoreCase("basic");
+    }
+
+    /**
+     * Maximum number of concurrent requests decided together in one round.
+     */
+    public static int batchSize() {
+        return (int) Math.max(1, Math.min(longProperty("paxos.batch.size", 256), 65536));
+    }
+
+    /**
+     * Milliseconds a batch is held open for more requests after its first one.
+     */
+    public static long batchWindowMillis() {
+        return Math.max(0, longProperty("paxos.batch.window", 1));
+    }
+
+    /**
+     * Number of consensus groups the keys are hashed to, each deciding the
+     * writes of its keys independently. Must be the same on every server.
+     */
+    public static int consensusGroups() {
+        return (int) Math.max(1, Math.min(longProperty("paxos.groups", 4), 256));
+    }
+
+    /**
+     * Milliseconds a leader lease lasts, or 0 if reads always ask a majority.
+     */
+    public static long leaseMillis() {
+        return Math.max(0, longProperty("paxos.lease", 0));
+    }
+
+    /**
+     * Maximum number of batches in flight at once, each in its own log slot.
+     */
+    public static int pipelineWindow() {
+        return (int) Math.max(1, Math.min(longProperty("paxos.inflight", 8), 1024));
+    }
+
+    /**
+     * Servers a prepare round needs, or 0 for a majority.
+     */
+    public static int prepareQuorum() {
+        return (int) Math.max(0, longProperty("paxos.quorum.prepare", 0));
+    }
+
+    /**
+     * Servers an accept round needs, or 0 for a majority.
+     */
+    public static int acceptQuorum() {
+        return (int) Math.max(0, longProperty("paxos.quorum.accept", 0));
+    }
+
+    /**
+     * Servers that must agree on a value a read returns, or 0 for a majority.
+     */
+    public static int readQuorum() {
+        return (int) Math.max(0, longProperty("paxos.quorum.read", 0));
+    }
+
+    /**
+     * Bytes of a snapshot sent per message to a server catching up.
+     */
+    public static int snapshotChunkBytes() {
+        return (int) Math.max(4096, Math.min(longProperty("paxos.snapshot.chunk", 1048576), 8388608));
+    }
+
+    /**
+     * Field the secrets of the clients are shared over: gf256 or prime.
+     * gf256 is the default as it shares passwords of any length, while
+     * prime only shares those of up to 65 bytes.
+     */
+    public static SecretSplitter.Engine sharingEngine() {
+        String value = System.getProperty("secret.engine", "gf256");
+        try {
+            return SecretSplitter.Engine.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Unknown secret.engine: " + value + ", using gf256");
+            return SecretSplitter.Engine.GF256;
+        }
+    }
+
+    //Reads a numeric property, falling back to the default if it is not a number.
+    private static long longProperty(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -1,19 +1,27 @@
 package com.northeastern.edu.utils;
 
-import generated.thrift.impl.CommunicationService;
+import com.northeastern.edu.storage.AcceptorState;
+import generated.thrift.impl.Command;
+import generated.thrift.impl.LogEntry;
 import generated.thrift.impl.MessageType;
 import generated.thrift.impl.OperationType;
 import generated.thrift.impl.ServerPacket;
+import generated.thrift.impl.RequestPacket;
+import org.apache.thrift.TDeserializer;
 import org.apache.thrift.TException;
-import org.apache.thrift.protocol.TBinaryProtocol;
-import org.apache.thrift.protocol.TProtocol;
-import org.apache.thrift.transport.TSocket;
-import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.transport.TTransportException;
 
+import java.io.File;
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 public class ServerServiceHandler extends ServiceHandler {
@@ -21,340 +29,472 @@ public class ServerServiceHandler extends ServiceHandler {
     //Logger for the class.
     private static Logger LOGGER = Logger.getLogger(ServerServiceHandler.class.getName());
 
-    //Replica Connections. Client-Availability mapping
-    private Map<CommunicationService.Client, Boolean> replicas;
+    //Connections to the replicas.
+    private final List<Replica> replicas = new ArrayList<>();
 
+    //Sends the calls to the replicas concurrently.
+    private final FanOut fanOut;
 
-    //Variable to represent the maximum value seen so far.
-    private static Map<String, String> valueOfHighestProposal;
+    //Whether each replica is up, as of its last heartbeats.
+    private final ReplicaHealth health;
 
-    //Flag to represent the promise status.
-    private static boolean promiseStatus;
+    //Sends the slots they missed to replicas a read found stale.
+    private final ExecutorService readRepair = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "read-repair");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    //Variable representing the agreed upon value.
-    private static Map<String, String> agreedValue;
+    //Servers the prepare and accept rounds and the reads need.
+    private final Quorums quorums;
 
-    //Variable representing the agreed upon sequence number.
-    private static String agreedProposal;
+    //Consensus groups, indexed by the hash of the keys they decide.
+    private final List<ConsensusGroup> groups = new ArrayList<>();
+
+    //Port identifying this server in its ballots.
+    private final int nodeId;
+
+    /**
+     * Decides the writes of the keys and client addresses hashed to it,
+     * independently of the other groups: each has its own log, batcher and
+     * acceptor state, so writes of different groups proceed in parallel.
+     * The acceptor state of the full Paxos rounds is guarded by the group.
+     */
+    private static final class ConsensusGroup {
+
+        //Index of the group, sent with its messages.
+        private final int index;
+
+        //Log of the writes decided with a stable leader, or null when
+        //every write runs a full Paxos round.
+        private final MultiPaxos multiPaxos;
+
+        //Merges concurrent requests into one round.
+        private final ProposalBatcher batcher;
+
+        //Highest ballot promised.
+        private long promisedBallot = Ballot.NONE;
+
+        //Highest ballot promised here or reported by a replica, which the
+        //next round started by this server exceeds.
+        private long highestBallot = Ballot.NONE;
+
+        //Flag to represent the promise status.
+        private boolean promiseStatus;
+
+        //Variable representing the agreed upon value.
+        private List<Command> agreedValue;
+
+        //Variable representing the agreed upon ballot.
+        private long agreedProposal;
+
+        //Replicas with a read repair of the group pending.
+        private final Set<Replica> repairing = ConcurrentHashMap.newKeySet();
+
+        ConsensusGroup(int index, MultiPaxos multiPaxos, ProposalBatcher batcher) {
+            this.index = index;
+            this.multiPaxos = multiPaxos;
+            this.batcher = batcher;
+        }
+    }
+
+    /**
+     * State of one full Paxos round started by this server. Each round has
+     * its own, so rounds never see each other's promises.
+     */
+    private static final class BasicRound {
+
+        //Group and ballot of the proposal.
+        private final ConsensusGroup group;
+        private final long ballot;
+
+        //Acceptors sent the accept request, and the request once it is issued.
+        private final Set<Replica> sentAccept = ConcurrentHashMap.newKeySet();
+        private final CompletableFuture<ServerPacket> acceptRequest = new CompletableFuture<>();
+
+        //Highest ballot among the promises.
+        private long highestBallot;
+
+        BasicRound(ConsensusGroup group, long ballot) {
+            this.group = group;
+            this.ballot = ballot;
+            this.highestBallot = ballot;
+        }
+
+        //If the proposer receives the requested responses from a prepare
+        //quorum of the acceptors, then it can issue a proposal with number n,
+        //the highest-numbered proposal among the responses. Promises
+        //arrive on the fan-out threads.
+        synchronized void recordPromise(ServerPacket packet) {
+            if (packet.type == MessageType.PROMISE && packet.ballot > highestBallot) {
+                highestBallot = packet.ballot;
+            }
+        }
+
+        synchronized long getHighestBallot() {
+            return highestBallot;
+        }
+    }
 
     //Constructor to initialize the addresses of server replicas.
-    //and sequence number to initiate paxos.
-    public ServerServiceHandler(List<Integer> replicaPorts, Integer portNumber) throws IOException {
+    //and sequence number to initiate paxos. The port for server to
+    //server communication identifies this server to the replicas.
+    public ServerServiceHandler(List<Integer> replicaPorts, Integer portNumber,
+                                Integer communicationPort) throws IOException {
         super(replicaPorts, portNumber);
+        this.nodeId = communicationPort;
+
+        //One selector thread carries the consensus messages to every replica.
+        int timeout = ServerConfiguration.replicaTimeoutMillis();
+        TAsyncClientManager clientManager = new TAsyncClientManager();
+        for (Integer replicaPort : replicaPorts) {
+            this.replicas.add(new Replica(this.hostAddress, replicaPort, timeout, clientManager,
+                    ServerConfiguration.replicaConnections(), ServerConfiguration.connectionIdleMillis()));
+        }
+        this.fanOut = new FanOut(timeout);
+        this.health = new ReplicaHealth(replicas, ServerConfiguration.heartbeatMillis(),
+                ServerConfiguration.phiThreshold(), ServerConfiguration.maxBackoffMillis());
+        this.quorums = Quorums.configure(replicas.size() + 1);
+
+        boolean multi = ServerConfiguration.multiPaxos();
+        //Without slots, the rounds of a group are decided one after another.
+        int window = multi ? ServerConfiguration.pipelineWindow() : 1;
+        int groupCount = ServerConfiguration.consensusGroups();
+        for (int index = 0; index < groupCount; index++) {
+            final int group = index;
+            MultiPaxos multiPaxos = !multi ? null : new MultiPaxos(communicationPort, group, replicas, fanOut,
+                    quorums.prepare() - 1, quorums.accept() - 1, localStore.getAppliedSlot(group), timeout,
+                    ServerConfiguration.leaseMillis(), (slot, commands) -> learnValue(group, slot, commands),
+                    acceptorLog(group), stateTransfer(group), ServerConfiguration.snapshotChunkBytes());
+            if (multiPaxos != null) {
+                AcceptorState acceptor = localStore.acceptorState(group);
+                List<LogEntry> accepted = new ArrayList<>();
+                for (String value : acceptor.getAccepted().values()) {
+                    accepted.add(decodeEntry(value));
+                }
+                multiPaxos.recover(acceptor.getPromised(), acceptor.getLeader(), accepted);
+            }
+            ProposalBatcher batcher = new ProposalBatcher(commands -> decide(group, commands),
+                    ServerConfiguration.batchSize(), ServerConfiguration.batchWindowMillis(), window);
+            this.groups.add(new ConsensusGroup(group, multiPaxos, batcher));
+        }
+
+        //Once every group exists, as restoring a snapshot hashes keys to them.
+        for (ConsensusGroup group : groups) {
+            if (group.multiPaxos != null) {
+                group.multiPaxos.startCatchUp();
+            }
+        }
     }
 
-    //Creates a client connection for a given port.
-    private void createConnection(Integer replicaPort) {
-        try {
-            TTransport transport = new TSocket(this.hostAddress, replicaPort);
-            transport.open();
+    //Records the acceptor state of a group in the local store.
+    private MultiPaxos.AcceptorLog acceptorLog(int group) {
+        return new MultiPaxos.AcceptorLog() {
+            @Override
+            public void promise(long ballot, int leader) throws IOException {
+                localStore.promise(group, ballot, leader);
+            }
+
+            @Override
+            public void accept(LogEntry entry) throws IOException {
+                localStore.accept(group, entry.slot, encodeEntry(entry));
+            }
 
-            TProtocol protocol = new TBinaryProtocol(transport);
+            @Override
+            public void sync() throws IOException {
+                localStore.awaitAcceptor(group);
+            }
+        };
+    }
 
-            CommunicationService.Client client = new CommunicationService.Client(protocol);
-            if (client.ping() == MessageType.SUCCESS)
-                this.replicas.put(client, true);
-        } catch (TTransportException e) {
-            LOGGER.severe("Error creating connection to the server: " + e.getMessage());
+    //Encodes an accepted entry for the local store, as Base64 of its compact Thrift form.
+    private static String encodeEntry(LogEntry entry) throws IOException {
+        try {
+            return Base64.getEncoder().encodeToString(new TSerializer(new TCompactProtocol.Factory()).serialize(entry));
         } catch (TException e) {
-            LOGGER.warning("Error creating connection to replica server on port: " + replicaPort);
+            throw new IOException("Error encoding the entry of slot " + entry.slot + ": " + e.getMessage(), e);
         }
     }
 
-    //Checks the existence of connection with replicas
-    //or creates new ones if one doesn't exist.
-    private void checkOrCreateConnection() throws TException {
-        //For each replica port.
-        if (replicas == null) {
-            this.replicas = new HashMap<>();
-            for (Integer replicaPort : replicaPorts) {
-                createConnection(replicaPort);
-            }
+    //Decodes an accepted entry recorded in the local store.
+    private static LogEntry decodeEntry(String value) throws IOException {
+        LogEntry entry = new LogEntry();
+        try {
+            new TDeserializer(new TCompactProtocol.Factory()).deserialize(entry, Base64.getDecoder().decode(value));
+        } catch (TException | IllegalArgumentException e) {
+            throw new IOException("Error decoding an accepted entry: " + e.getMessage(), e);
         }
-        //Ping replicas to verify their availability.
-        else {
-            for (CommunicationService.Client replica : this.replicas.keySet()) {
-                if (replica.ping() != MessageType.SUCCESS) {
-                    this.replicas.put(replica, false);
-                } else {
-                    this.replicas.put(replica, true);
-                }
+        return entry;
+    }
+
+    //Copies the keys and client addresses of a group to and from the local store.
+    private MultiPaxos.StateTransfer stateTransfer(int group) {
+        return new MultiPaxos.StateTransfer() {
+            @Override
+            public File createFile() throws IOException {
+                return localStore.createTransferFile();
             }
-        }
+
+            @Override
+            public void write(OutputStream stream) throws IOException {
+                localStore.exportPart(key -> groupOf(key).index == group, stream);
+            }
+
+            @Override
+            public void restore(File snapshot, long slot) throws IOException {
+                localStore.restorePart(key -> groupOf(key).index == group, group, slot, snapshot);
+            }
+        };
     }
 
-    //For each of the replica, sends a proposal request.
-    private Map<CommunicationService.Client, ServerPacket> sendProposalToReplicas
-    (Map<String, String> value, OperationType operationType) throws TException {
-        //Store responses to proposal sent back by replicas.
-        Map<CommunicationService.Client, ServerPacket> proposalResponses = new HashMap<>();
+    //Group deciding the writes of a key or client address. Uses the same
+    //hash as the partitions of the local store.
+    private ConsensusGroup groupOf(String key) {
+        return groups.get(Math.floorMod(key.hashCode(), groups.size()));
+    }
 
-        for (CommunicationService.Client replica : this.replicas.keySet()) {
-            if (this.replicas.get(replica)) {
-                //Construct the proposal message.
-                ServerPacket proposal = new ServerPacket();
-                proposal.sequence_number = LocalDateTime.now().toString();
-                proposal.type = MessageType.PROPOSAL;
-                proposal.proposalValue = value;
-                proposal.operationType = operationType;
+    //Splits the keys of a request by the group deciding them.
+    private Map<ConsensusGroup, Map<String, String>> splitByGroup(Map<String, String> value) {
+        Map<ConsensusGroup, Map<String, String>> split = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : value.entrySet()) {
+            split.computeIfAbsent(groupOf(entry.getKey()), group -> new LinkedHashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        return split;
+    }
 
-                //Forward the proposal by invoking the call.
-                ServerPacket packet = replica.acceptProposal(proposal);
-                proposalResponses.put(replica, packet);
+    //Replicas up as of their last heartbeats, the fastest to answer first.
+    private List<Replica> availableReplicas() {
+        List<Replica> available = new ArrayList<>();
+        for (Replica replica : replicas) {
+            if (health.isAvailable(replica)) {
+                available.add(replica);
             }
         }
+        available.sort(Comparator.comparingDouble(health::rttMillis));
+        return available;
+    }
 
-        return proposalResponses;
+    //Sends a proposal request to the available replicas concurrently and
+    //returns the responses received once a prepare quorum, counting this
+    //server, has promised.
+    //Every promise, including one arriving after the quorum, is recorded, and
+    //a late acceptor is sent the accept request once it is issued.
+    private Map<Replica, ServerPacket> sendProposalToReplicas(List<Command> commands, BasicRound round) {
+        //Construct the proposal message.
+        ServerPacket proposal = new ServerPacket();
+        proposal.ballot = round.ballot;
+        proposal.group = round.group.index;
+        proposal.type = MessageType.PROPOSAL;
+        proposal.commands = commands;
+
+        //Forward the proposal by invoking the call.
+        return fanOut.call(availableReplicas(), replica -> replica.acceptProposal(proposal),
+                packet -> packet.type == MessageType.PROMISE, quorums.prepare() - 1,
+                (replica, packet) -> {
+                    round.recordPromise(packet);
+                    if (packet.type == MessageType.FAILURE) {
+                        observeBallot(round.group, packet.ballot);
+                    }
+                    if (packet.type == MessageType.PROMISE) {
+                        round.acceptRequest.thenAccept(accept -> {
+                            if (round.sentAccept.add(replica)) {
+                                sendLateAccept(replica, accept);
+                            }
+                        });
+                    }
+                });
     }
 
-    //If the sequence is below the current highest sequence number,
+    //Sends the accept request to an acceptor whose promise arrived after
+    //the quorum, so it learns the value as well, without waiting for it.
+    private void sendLateAccept(Replica replica, ServerPacket acceptRequest) {
+        replica.acceptProposal(acceptRequest).whenComplete((packet, error) -> {
+            if (error != null) {
+                LOGGER.warning("Error sending the accept request to replica " + replica + ": " + error.getMessage());
+            } else if (packet.type == MessageType.FAILURE) {
+                LOGGER.warning("Replica " + replica + " rejected the accept request " + Ballot.toString(acceptRequest.ballot));
+            }
+        });
+    }
+
+    //If the ballot is not above the highest ballot promised in the group,
     //the request is dropped.
-    private boolean verifySequenceNumberForProcessing(String sequence_number) {
-        return LocalDateTime.parse(sequence_number).isAfter(currentSequenceNumber);
+    private boolean verifyBallotForProcessing(ConsensusGroup group, long ballot) {
+        return ballot > group.promisedBallot;
+    }
+
+    //Records a ballot promised by a replica, so the next round exceeds it.
+    private void observeBallot(ConsensusGroup group, long ballot) {
+        synchronized (group) {
+            group.highestBallot = Math.max(group.highestBallot, ballot);
+        }
+    }
+
+    //Ballot of a new round of a group, higher than every ballot seen in it.
+    private long nextBallot(ConsensusGroup group) {
+        synchronized (group) {
+            group.highestBallot = Ballot.next(group.highestBallot, nodeId);
+            return group.highestBallot;
+        }
     }
 
     //Creates a promise response packet based on the whether it has accepted
     //a proposal or current sequence number values
-    private ServerPacket generatePromiseResponse(ServerPacket response, ServerPacket proposerData) {
+    private ServerPacket generatePromiseResponse(ConsensusGroup group, ServerPacket response,
+                                                 ServerPacket proposerData) {
 
         //Has promised other proposers?
-        if (promiseStatus) {
+        if (group.promiseStatus) {
             response.type = MessageType.PROMISE;
-            response.sequence_number = agreedProposal;
-            response.proposalValue = agreedValue;
+            response.ballot = group.agreedProposal;
+            response.commands = group.agreedValue;
         } else {
             //update the agreed value, proposal number and promise status
-            agreedValue = proposerData.proposalValue;
-            agreedProposal = proposerData.sequence_number;
-            promiseStatus = true;
+            group.agreedValue = proposerData.commands;
+            group.agreedProposal = proposerData.ballot;
+            group.promiseStatus = true;
 
             response.type = MessageType.PROMISE;
-            response.sequence_number = proposerData.sequence_number;
-            response.proposalValue = proposerData.proposalValue;
+            response.ballot = proposerData.ballot;
+            response.commands = proposerData.commands;
         }
 
 
         return response;
     }
 
-    //If the proposer receives the requested responses from a majority
-    //of the acceptors, then it can issue a proposal with number n
-    //and value v, where v is the value of the highest-numbered proposal
-    //among the responses, or is any value selected by the proposer if
-    //the responders reported no proposals.
-    private Map<CommunicationService.Client, ServerPacket> identifyProposalValue
-    (Map<CommunicationService.Client, ServerPacket> responses) {
-        Iterator<Map.Entry<CommunicationService.Client, ServerPacket>> entryIterator = responses.entrySet().iterator();
-
-        while (entryIterator.hasNext()) {
-
-            Map.Entry<CommunicationService.Client, ServerPacket> entry = entryIterator.next();
-
-            //Check if there are any proposals from the acceptors. If not,
-            //prepare to issue an accept request to the acceptors by removing failed
-            //client responses.
-            if (entry.getValue().type == MessageType.PROMISE) {
-                //When the proposed value is greater than the current highest
-                //proposal value, accept the proposal.
-                if (currentSequenceNumber.isBefore(LocalDateTime.parse(entry.getValue().sequence_number))) {
-                    currentSequenceNumber = LocalDateTime.parse(entry.getValue().sequence_number);
-                    valueOfHighestProposal = entry.getValue().proposalValue;
-                }
-            } else {
-                entryIterator.remove();
-            }
-        }
-
+    //Prepare to issue an accept request to the acceptors by removing failed
+    //responses; the promises were recorded as they arrived.
+    private Map<Replica, ServerPacket> identifyProposalValue(Map<Replica, ServerPacket> responses) {
+        responses.values().removeIf(packet -> packet.type != MessageType.PROMISE);
         return responses;
     }
 
-    //Calculates majority based on the filtered responses and the total number of replicas
-    //available for the proposer.
-    private boolean hasMajority(Object responses) {
+    //Whether the given number of servers, this one included, meet a phase
+    //needing the given quorum. As in Multi-Paxos, the proposer is one of the
+    //acceptors of its own round, so it needs one replica fewer.
+    private static boolean hasQuorum(int servers, int quorum) {
+        return servers >= quorum;
+    }
 
-        int totalAvailableReplicas = replicas.size();
-        if (responses instanceof Map)
-        {
-            int totalResponses = ((Map) responses).size();
+    //Promises the ballot of a round started by this server, as one of the
+    //acceptors of the round, unless a higher ballot was promised.
+    private boolean promiseLocally(List<Command> commands, BasicRound round) {
+        ServerPacket proposal = new ServerPacket();
+        proposal.ballot = round.ballot;
+        proposal.group = round.group.index;
+        proposal.type = MessageType.PROPOSAL;
+        proposal.commands = commands;
+
+        ServerPacket promise = processProposalRequest(round.group, proposal);
+        round.recordPromise(promise);
+        return promise.type == MessageType.PROMISE;
+    }
 
-            //Majority is when the total responses has at least 3/4ths of
-            //majority.
-            return totalResponses >= totalAvailableReplicas * 3 / 4;
-        } else if (responses instanceof Integer) {
-            return ((Integer)responses) >= totalAvailableReplicas * 3/4;
-        } else {
-            LOGGER.severe("Invalid response object type: " + responses.getClass().getName());
-            return false;
+    //Accepts the ballot of a round started by this server, as one of the
+    //acceptors of the round, unless a higher ballot was promised. The value
+    //is learned once the accept quorum is met.
+    private boolean acceptLocally(ConsensusGroup group, long ballot) {
+        synchronized (group) {
+            if (ballot < group.promisedBallot) {
+                return false;
+            }
+            group.promiseStatus = false;
+            return true;
         }
-
     }
 
-    //Send accept proposals to the promised acceptors.
+    //Send accept proposals to the promised acceptors and the other available
+    //replicas concurrently and wait for an accept quorum of them, counting
+    //this server, as the accept quorum may be larger than the prepare one.
+    //Acceptors that promised after the quorum are sent the same request as
+    //their promise arrives.
     private boolean sendAcceptToReplicas
-    (Map<String, String> value,
-     Map<CommunicationService.Client, ServerPacket> responses,
-     OperationType operationType) throws TException {
-        //Loop through the accept responses.
+    (List<Command> commands,
+     Map<Replica, ServerPacket> responses,
+     BasicRound round) {
         ServerPacket acceptProposal = new ServerPacket();
         acceptProposal.type = MessageType.ACCEPT_REQUEST;
-        acceptProposal.proposalValue = value;
-        acceptProposal.sequence_number = currentSequenceNumber.toString();
-        acceptProposal.operationType = operationType;
-
-
-        Iterator<Map.Entry<CommunicationService.Client, ServerPacket>> entryIterator = responses.entrySet().iterator();
-        while (entryIterator.hasNext()) {
-            Map.Entry<CommunicationService.Client, ServerPacket> entry = entryIterator.next();
-
-            //If acceptor is available
-            if (this.replicas.get(entry.getKey())) {
-                ServerPacket packet = entry.getKey().acceptProposal(acceptProposal);
+        acceptProposal.commands = commands;
+        acceptProposal.ballot = round.getHighestBallot();
+        acceptProposal.group = round.group.index;
 
-                if (packet.type == MessageType.FAILURE) {
-                    entryIterator.remove();
-                } else {
-                    responses.put(entry.getKey(), packet);
-                }
-            }
+        if (!acceptLocally(round.group, acceptProposal.ballot)) {
+            round.acceptRequest.cancel(false);
+            return false;
         }
 
-        if (hasMajority(responses))
-        {
-            try {
-                if (operationType != OperationType.LOGIN) {
-                    super.writeToMemory(value);
-                }
-            } catch (IOException e) {
-                throw new TException(e.getMessage());
-            }
-            return true;
-        }
+        Set<Replica> acceptors = new LinkedHashSet<>(responses.keySet());
+        acceptors.addAll(availableReplicas());
+        round.sentAccept.addAll(acceptors);
+        round.acceptRequest.complete(acceptProposal);
+
+        Map<Replica, ServerPacket> accepted = fanOut.call(acceptors,
+                replica -> replica.acceptProposal(acceptProposal),
+                packet -> packet.type != MessageType.FAILURE, quorums.accept() - 1,
+                (replica, packet) -> {
+                    if (packet.type == MessageType.FAILURE) {
+                        LOGGER.warning("Replica " + replica + " rejected the accept request " + Ballot.toString(acceptProposal.ballot));
+                    }
+                });
+        accepted.values().removeIf(packet -> packet.type == MessageType.FAILURE);
 
-        return false;
+        //The proposer applies and logs the value itself once
+        //a quorum accepted it.
+        return hasQuorum(accepted.size() + 1, quorums.accept());
     }
 
     //If an acceptor receives an accept request for
     //a proposal numbered n, it accepts the proposal
     //unless it has already responded to a prepare request
     //having a number greater than n.
-    private ServerPacket processAcceptProposal(ServerPacket message) throws IOException, TException {
-        //Check if the proposed sequence number
-        //is greater than the current sequence number (which represents
-        //the sequence number of the latest accepted proposal)
-        if (!LocalDateTime.parse(message.sequence_number).isBefore(currentSequenceNumber)) {
-            //The acceptor has learned the value successfully.
-            this.keyValuePair = (Map<String, String>) loadMemoryObject(1);
-            if (this.keyValuePair == null) {
-                this.keyValuePair = new HashMap<>();
+    private ServerPacket processAcceptProposal(ConsensusGroup group, ServerPacket message)
+            throws IOException, TException {
+        //Check if the proposed ballot is not below the ballot
+        //of the latest promised proposal.
+        synchronized (group) {
+            if (message.ballot < group.promisedBallot) {
+                message.type = MessageType.FAILURE;
+                message.ballot = group.promisedBallot;
+                return message;
             }
-
-            this.clientKeys = (Map<String, List<String>>) loadKeysMemoryObject(1);
-            if (message.operationType == OperationType.DELETE) {
-                this.keyValuePair = (Map<String, String>) loadMemoryObject(1);
-
-                for (String key : message.proposalValue.keySet()) {
-                    this.keyValuePair.remove(key);
-                }
-
-                super.writeToMemory(this.keyValuePair);
-            } else if(message.operationType == OperationType.WRITE) {
-                this.keyValuePair.putAll(message.proposalValue);
-                super.writeToMemory(this.keyValuePair);
-            } else if (message.operationType == OperationType.LOGIN) {
-
-                //For each key in the proposal value.
-                if (this.clientKeys == null) {
-                    this.clientKeys = new HashMap<>();
-                }
-
-                for (String key: message.proposalValue.keySet()) {
-
-                    if (this.clientKeys.containsKey(key)) {
-                        List<String> value = this.clientKeys.get(key);
-
-                        if (value.size() >=3) {
-                            value = new ArrayList<>();
-                        }
-
-                        value.add(message.proposalValue.get(key));
-
-                        this.clientKeys.put(key, value);
-
-                    } else {
-                        List<String> value = new ArrayList<>();
-                        value.add(message.proposalValue.get(key));
-                        this.clientKeys.put(key, value);
-                    }
-
-                    //Add the commit time to memory.
-                    Map<String, String> commitTime = new HashMap<>();
-                    commitTime.put(key, LocalDateTime.now().toString());
-                    writeCommitTimeToMemory(commitTime);
-                }
-                super.writeKeysToMemory(this.clientKeys);
-            }
-
-            //Reply to the proposer with a success.
-            promiseStatus = false;
-            message.type = MessageType.SUCCESS;
-        } else {
-            message.type = MessageType.FAILURE;
+            group.promiseStatus = false;
         }
 
-        return message;
-    }
+        //The acceptor has learned the value successfully.
+        learnValue(group.index, 0, message.commands);
 
-    private ServerPacket processProposalRequest(ServerPacket message) {
-        boolean canProcess = verifySequenceNumberForProcessing(message.sequence_number);
-
-        //Response packet to construct based on processing.
-        ServerPacket response = new ServerPacket();
-
-        //If can't process, return a failure response to proposer
-        //to increase efficiency rather wait on time out.
-        if (!canProcess) {
-            response.type = MessageType.FAILURE;
-            return response;
-        }
+        //Reply to the proposer with a success.
+        message.type = MessageType.SUCCESS;
 
-        //If the acceptor receives a prepare message,
-        //it responds to the request with a promise not
-        //to accept any more proposals numbered less than n
-        //and with the highest-numbered proposal (if any)
-        //that it has accepted
-        return generatePromiseResponse(response, message);
+        return message;
     }
 
-    private Map<String, Integer> getMajorityValue(String key, Map<String, Integer> majorityValue) throws IOException, TException {
+    private ServerPacket processProposalRequest(ConsensusGroup group, ServerPacket message) {
+        synchronized (group) {
+            boolean canProcess = verifyBallotForProcessing(group, message.ballot);
 
-        for (CommunicationService.Client replica : this.replicas.keySet()) {
-            //If replica is available
-            if (this.replicas.get(replica)) {
-                String response = replica.getStoredValue(key);
+            //Response packet to construct based on processing.
+            ServerPacket response = new ServerPacket();
 
-                //If the value exists, increment its count
-                if (!response.isEmpty()) {
-                    if (majorityValue.containsKey(response)) {
-                        int value = majorityValue.get(response);
-                        majorityValue.put(response, ++value);
-                    } else {
-                        //Else add an entry.
-                        majorityValue.put(response, 1);
-                    }
-                } else {
-                    String message = String.format("Value for key: {0} is not found at {1}", key, getAddressForClient(replica));
-                    LOGGER.warning(message);
-                }
+            //If can't process, return a failure response to proposer
+            //to increase efficiency rather wait on time out.
+            if (!canProcess) {
+                response.type = MessageType.FAILURE;
+                response.ballot = group.promisedBallot;
+                return response;
             }
+            group.promisedBallot = message.ballot;
+            group.highestBallot = Math.max(group.highestBallot, group.promisedBallot);
+
+            //If the acceptor receives a prepare message,
+            //it responds to the request with a promise not
+            //to accept any more proposals numbered less than n
+            //and with the highest-numbered proposal (if any)
+            //that it has accepted
+            return generatePromiseResponse(group, response, message);
         }
-
-        return majorityValue;
-    }
-
-    //Gets the socket address for a given client/server object.
-    private String getAddressForClient(CommunicationService.Client client) {
-        TSocket socket = (TSocket) client.getOutputProtocol().getTransport();
-        return socket.getSocket().getRemoteSocketAddress().toString();
     }
 
     @Override
@@ -368,59 +508,180 @@ public class ServerServiceHandler extends ServiceHandler {
         return ports;
     }
 
-    //Initiates the Paxos algorithm to decide if the operation
-    //requested can be performed in a distributed fashion.
+    //Decides if the operation requested can be performed in a distributed
+    //fashion, together with the operations requested concurrently. The
+    //keys of each group are decided by that group.
     @Override
     protected boolean canWriteOrDelete(Map<String, String> value, OperationType operationType) throws TException {
-        checkOrCreateConnection();
-        promiseStatus = false;
+        Map<ConsensusGroup, Map<String, String>> split = splitByGroup(value);
+        if (split.isEmpty()) {
+            return groups.get(0).batcher.submit(operationType, value);
+        }
+
+        boolean decided = true;
+        for (Map.Entry<ConsensusGroup, Map<String, String>> part : split.entrySet()) {
+            decided &= part.getKey().batcher.submit(operationType, part.getValue());
+        }
+        return decided;
+    }
+
+    //Initiates the Paxos algorithm to decide a batch of operations of a group.
+    private boolean decide(int index, List<Command> commands) throws TException {
+        ConsensusGroup group = groups.get(index);
+
+        //The leader applies the batch once it is chosen for its slot.
+        if (group.multiPaxos != null) {
+            return group.multiPaxos.propose(commands);
+        }
+
+        BasicRound round = new BasicRound(group, nextBallot(group));
+
+        //Promise the ballot here before asking the replicas.
+        if (!promiseLocally(commands, round)) {
+            round.acceptRequest.cancel(false);
+            return false;
+        }
 
         //Initiate proposal to all the replicas.
-        Map<CommunicationService.Client, ServerPacket> responses = sendProposalToReplicas(value, operationType);
+        Map<Replica, ServerPacket> responses = sendProposalToReplicas(commands, round);
 
         //Prepare to issue accept requests to acceptors.
         responses = identifyProposalValue(responses);
 
-        //Check if the proposer has a majority.
-        boolean hasMajority = hasMajority(responses);
+        //Check if the proposer has a quorum of promises, its own included.
+        boolean hasQuorum = hasQuorum(responses.size() + 1, quorums.prepare());
 
-        //If it has majority, then send accept requests to
+        //If it has a quorum, then send accept requests to
         //the acceptors.
-        return hasMajority
-                && sendAcceptToReplicas(value, responses, operationType);
+        if (!hasQuorum) {
+            round.acceptRequest.cancel(false);
+            return false;
+        }
+        if (!sendAcceptToReplicas(commands, responses, round)) {
+            return false;
+        }
+
+        //The proposer learns the batch it got accepted.
+        try {
+            learnValue(index, 0, commands);
+        } catch (IOException e) {
+            throw new TException(e.getMessage());
+        }
+        return true;
+    }
+
+    //Forwards a write to the leader of its group when another server
+    //leads it, and decides it here when none is known, the leader is
+    //unreachable or the keys belong to several groups.
+    @Override
+    public RequestPacket storeKeyValue(Map<String, String> keyValue, OperationType operationType) throws TException {
+        Set<ConsensusGroup> written = splitByGroup(keyValue).keySet();
+        MultiPaxos multiPaxos = written.size() == 1 ? written.iterator().next().multiPaxos : null;
+        Replica leader = multiPaxos == null ? null : multiPaxos.leader();
+        if (leader != null) {
+            try {
+                return leader.storeKeyValue(keyValue, operationType);
+            } catch (TTransportException e) {
+                multiPaxos.leaderFailed(leader);
+            }
+        }
+
+        return super.storeKeyValue(keyValue, operationType);
+    }
+
+    //Forwards a delete to the leader of its group when another server
+    //leads it, and decides it here when none is known or the leader is
+    //unreachable.
+    @Override
+    public RequestPacket deleteKey(String key, OperationType operationType) throws TException {
+        MultiPaxos multiPaxos = groupOf(key).multiPaxos;
+        Replica leader = multiPaxos == null ? null : multiPaxos.leader();
+        if (leader != null) {
+            try {
+                return leader.deleteKey(key, operationType);
+            } catch (TTransportException e) {
+                multiPaxos.leaderFailed(leader);
+            }
+        }
+
+        return super.deleteKey(key, operationType);
     }
 
+    //Reads a value locally while this server holds the lease of the key's
+    //group, forwards the read to the server this one granted the lease,
+    //and otherwise takes the value a read quorum of the servers store.
     @Override
     protected String getValue(String key) throws TException {
-        try {
-            checkOrCreateConnection();
-
-            Map<String, Integer> majorityValue = new HashMap<>();
-            majorityValue.put(getStoredValue(key), 1);
-            //Contact other replicas and get the value.
-            majorityValue = getMajorityValue(key, majorityValue);
-
-            //Majority value is
-            String currentKey = "";
-            int maxCount = 0;
-            for (String value : majorityValue.keySet()) {
-                if (maxCount < majorityValue.get(value)) {
-                    maxCount = majorityValue.get(value);
-                    currentKey = value;
+        ConsensusGroup group = groupOf(key);
+        MultiPaxos multiPaxos = group.multiPaxos;
+        if (multiPaxos != null && multiPaxos.holdsLease()) {
+            return getStoredValue(key);
+        }
+
+        Replica leaseHolder = multiPaxos == null ? null : multiPaxos.leaseHolder();
+        if (leaseHolder != null) {
+            try {
+                RequestPacket response = leaseHolder.getValueForKey(key);
+                if (response.type != MessageType.SUCCESS) {
+                    return "";
                 }
+                String value = response.keyValue.get(key);
+                return value == null ? "" : value;
+            } catch (TTransportException e) {
+                LOGGER.warning("Lease holder " + leaseHolder + " is unreachable: " + e.getMessage());
             }
+        }
 
-            if (hasMajority(maxCount))
-            {
-                return currentKey;
-            } else {
-                return "";
-            }
+        return readMajority(key, group);
+    }
 
-        } catch (IOException e) {
-            LOGGER.severe("Error loading memory object");
-            throw new TException("Error loading memory object: " + e.getMessage());
+    //Asks the replicas for the value of a key concurrently and returns as
+    //soon as a read quorum, counting this server, agrees on a value,
+    //without waiting for the slower replicas. Replicas answering differently,
+    //including those answering after the return, are repaired with the
+    //slots they missed, provided this server holds the agreed value.
+    private String readMajority(String key, ConsensusGroup group) throws TException {
+        String localValue = getStoredValue(key);
+        CompletableFuture<String> agreed = new CompletableFuture<>();
+
+        Map<Replica, String> responses = fanOut.callUntil(availableReplicas(), replica -> replica.getStoredValue(key),
+                received -> agreedValue(localValue, received.values()) != null,
+                (replica, value) -> agreed.thenAccept(majority -> {
+                    if (group.multiPaxos != null && !majority.equals(value) && majority.equals(localValue)
+                            && group.repairing.add(replica)) {
+                        readRepair.execute(() -> {
+                            try {
+                                group.multiPaxos.repair(replica);
+                            } finally {
+                                group.repairing.remove(replica);
+                            }
+                        });
+                    }
+                }));
+
+        String majority = agreedValue(localValue, responses.values());
+        if (majority == null) {
+            agreed.cancel(false);
+            return "";
+        }
+        agreed.complete(majority);
+        return majority;
+    }
+
+    //Value a read quorum agrees on, counting the value stored here, or null.
+    private String agreedValue(String localValue, Collection<String> values) {
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put(localValue, 1);
+        for (String value : values) {
+            counts.merge(value, 1, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            if (hasQuorum(count.getValue(), quorums.read())) {
+                return count.getKey();
+            }
         }
+        return null;
     }
 
     List<String> getAddresses() {
@@ -435,11 +696,24 @@ public class ServerServiceHandler extends ServiceHandler {
 
     @Override
     public ServerPacket acceptProposal(ServerPacket packet) throws TException {
+        //Groups are configured alike on every server.
+        if (packet.group < 0 || packet.group >= groups.size()) {
+            LOGGER.severe("Message for unknown consensus group " + packet.group + ", check paxos.groups");
+            ServerPacket response = new ServerPacket();
+            response.type = MessageType.FAILURE;
+            return response;
+        }
+        ConsensusGroup group = groups.get(packet.group);
+
         try {
+            if (group.multiPaxos != null) {
+                return group.multiPaxos.handle(packet);
+            }
+
             if (packet.type == MessageType.ACCEPT_REQUEST) {
-                return processAcceptProposal(packet);
+                return processAcceptProposal(group, packet);
             } else if (packet.type == MessageType.PROPOSAL) {
-                return processProposalRequest(packet);
+                return processProposalRequest(group, packet);
             }
 
             return packet;
@@ -452,19 +726,14 @@ public class ServerServiceHandler extends ServiceHandler {
 
     @Override
     public MessageType ping() throws TException {
-        LOGGER.info("Ping message received");
+        LOGGER.fine("Ping message received");
         return MessageType.SUCCESS;
     }
 
     @Override
     public String getStoredValue(String key) throws TException {
         //Get the value from the current system.
-        try {
-            this.keyValuePair = (Map<String, String>) super.loadMemoryObject(1);
-            return this.keyValuePair.getOrDefault(key, "");
-        } catch (IOException e) {
-            LOGGER.severe("Error reading file from memory: " + e.getMessage());
-            return "";
-        }
+        String value = localStore.get(key);
+        return value == null ? "" : value;
     }
 }
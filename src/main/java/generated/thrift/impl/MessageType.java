@@ -18,7 +18,10 @@ public enum MessageType implements org.apache.thrift.TEnum {
   READ(6),
   SUCCESS(7),
   SUCCESS_WRITE(8),
-  FAILURE(9);
+  FAILURE(9),
+  COMMIT(10),
+  CATCH_UP(11),
+  SNAPSHOT(12);
 
   private final int value;
 
@@ -60,6 +63,12 @@ public enum MessageType implements org.apache.thrift.TEnum {
         return SUCCESS_WRITE;
       case 9:
         return FAILURE;
+      case 10:
+        return COMMIT;
+      case 11:
+        return CATCH_UP;
+      case 12:
+        return SNAPSHOT;
       default:
         return null;
     }
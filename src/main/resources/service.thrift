@@ -10,7 +10,10 @@ enum MessageType {
     READ,
     SUCCESS,
     SUCCESS_WRITE,
-    FAILURE
+    FAILURE,
+    COMMIT,
+    CATCH_UP,
+    SNAPSHOT
 }
 
 enum OperationType {
@@ -36,12 +39,35 @@ struct LoginPacket {
     5: string               clientAddress
 }
 
-//Packet structure for server to server communication
+//Client request decided as part of a batch
+struct Command {
+    1: OperationType        operationType,
+    2: map<string, string>  value
+}
+
+//Batch accepted for a slot of the replicated log. Ids 2 to 4 held the
+//retired sequence_number, operationType and value fields and must not be
+//reused.
+struct LogEntry {
+    1: i64                  slot,
+    5: list<Command>        commands,
+    6: i64                  ballot
+}
+
+//Packet structure for server to server communication. Ids 2 to 4 held
+//the retired sequence_number, operationType and proposalValue fields and
+//must not be reused.
 struct ServerPacket {
     1: MessageType          type,
-    2: string               sequence_number,
-    3: OperationType        operationType,
-    4: map<string, string>  proposalValue
+    5: i64                  slot,
+    6: i32                  leader,
+    7: i64                  committed,
+    8: list<LogEntry>       entries,
+    9: list<Command>        commands,
+    10: i64                 ballot,
+    11: i32                 group,
+    12: binary              chunk,
+    13: i64                 offset
 }
 
 //Interface for client to server communication and server to server communication
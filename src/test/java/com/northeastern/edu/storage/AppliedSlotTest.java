@@ -0,0 +1,114 @@
+package com.northeastern.edu.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loses the tail of the log of one partition after a slot was applied,
+ * as a crash before it was synced would, and checks the slot is no longer
+ * taken for applied when the store is opened again.
+ */
+public class AppliedSlotTest {
+
+    //Number of partitions, and the consensus group applied, whose acceptor
+    //state is kept in the last partition.
+    private static final int PARTITIONS = 2;
+    private static final int GROUP = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void slotWithALostPartIsNotApplied() throws IOException {
+        String fileName = new File(folder.newFolder(), "data").getPath();
+        String first = keyOfPartition(0);
+        String second = keyOfPartition(1);
+
+        try (LocalStore store = open(fileName)) {
+            store.applySlot(GROUP, 1, Collections.singletonList(write(first, second, "1")));
+            store.accept(GROUP, 2, "accepted");
+            store.awaitAcceptor(GROUP);
+        }
+        File log = activeSegment(fileName + ".p1of" + PARTITIONS + ".log");
+        long length = log.length();
+
+        try (LocalStore store = open(fileName)) {
+            store.applySlot(GROUP, 2, Collections.singletonList(write(first, second, "2")));
+            assertEquals(2, store.getAppliedSlot(GROUP));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(length);
+        }
+
+        try (LocalStore store = open(fileName)) {
+            assertEquals(1, store.getAppliedSlot(GROUP));
+            assertEquals("2", store.get(first));
+            assertEquals("1", store.get(second));
+            assertTrue(store.acceptorState(GROUP).getAccepted().containsKey(2L));
+
+            //Applying the slot again fills in the lost part.
+            store.applySlot(GROUP, 2, Collections.singletonList(write(first, second, "2")));
+            assertEquals(2, store.getAppliedSlot(GROUP));
+            assertFalse(store.acceptorState(GROUP).getAccepted().containsKey(2L));
+        }
+
+        try (LocalStore store = open(fileName)) {
+            assertEquals(2, store.getAppliedSlot(GROUP));
+            assertEquals("2", store.get(first));
+            assertEquals("2", store.get(second));
+        }
+    }
+
+    //Writes the same value to two keys.
+    private static LocalStore.Change write(String first, String second, String value) {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(first, value);
+        values.put(second, value);
+        return new LocalStore.Change(Mutation.Operation.WRITE, values);
+    }
+
+    //A key stored in the given partition.
+    private static String keyOfPartition(int partition) {
+        for (int index = 0; ; index++) {
+            String key = "key-" + index;
+            if (Math.floorMod(key.hashCode(), PARTITIONS) == partition) {
+                return key;
+            }
+        }
+    }
+
+    //Last segment of a mutation log.
+    private static File activeSegment(String logName) {
+        File log = new File(logName);
+        File active = null;
+        int last = -1;
+        for (File file : log.getParentFile().listFiles()) {
+            String name = file.getName();
+            if (name.startsWith(log.getName() + ".")) {
+                int segment = Integer.parseInt(name.substring(log.getName().length() + 1));
+                if (segment > last) {
+                    last = segment;
+                    active = file;
+                }
+            }
+        }
+        return active;
+    }
+
+    private static LocalStore open(String fileName) throws IOException {
+        return new LocalStore(fileName, fileName + ".json", PARTITIONS, KeyValueStore.Engine.HEAP, 1 << 20,
+                GroupCommit.Durability.NONE);
+    }
+}
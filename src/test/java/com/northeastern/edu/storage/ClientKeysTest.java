@@ -0,0 +1,108 @@
+package com.northeastern.edu.storage;
+
+import com.northeastern.edu.secretSharing.Key;
+import com.northeastern.edu.secretSharing.SecretSharing;
+import com.northeastern.edu.secretSharing.SecretSplitter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stores the keys issued to a client with a number of keys reconstructing
+ * its secret other than the default three.
+ */
+public class ClientKeysTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsEveryKeyOfALogin() throws IOException {
+        for (SecretSplitter.Engine engine : SecretSplitter.Engine.values()) {
+            assertReconstructs(engine, 6, 4);
+            assertReconstructs(engine, 4, 2);
+        }
+    }
+
+    @Test
+    public void replacesTheKeysOfTheLastLogin() throws IOException {
+        SecretSharing sharing = new SecretSharing(SecretSplitter.Engine.GF256, 6, 4);
+        String fileName = newFile("data");
+
+        try (LocalStore store = open(fileName)) {
+            store.login("client", issue(sharing, "first password"));
+            store.login("client", issue(sharing, "second password"));
+            assertEquals(4, store.getClientLogin("client").getKeys().size());
+            assertTrue(reconstructs(sharing, store.getClientLogin("client")));
+
+            store.revoke("client");
+            assertNull(store.getClientLogin("client"));
+        }
+    }
+
+    //Issues k keys of n to a client and checks they reconstruct its secret,
+    //before and after the store is opened again.
+    private void assertReconstructs(SecretSplitter.Engine engine, int n, int k) throws IOException {
+        SecretSharing sharing = new SecretSharing(engine, n, k);
+        String fileName = newFile("data");
+
+        ClientLogin issued = issue(sharing, "password");
+        try (LocalStore store = open(fileName)) {
+            store.login("client", issued);
+            assertEquals(issued.getKeys(), store.getClientLogin("client").getKeys());
+            assertTrue(reconstructs(sharing, store.getClientLogin("client")));
+        }
+
+        try (LocalStore store = open(fileName)) {
+            assertEquals(issued.getKeys(), store.getClientLogin("client").getKeys());
+            assertEquals(issued.getDigest(), store.getClientLogin("client").getDigest());
+        }
+
+        //Fewer keys than k do not reconstruct the secret.
+        assertFalse(reconstructs(sharing, new ClientLogin(issued.getDigest(), issued.getKeys().subList(0, k - 1))));
+
+        //Nor do the keys of another password.
+        assertFalse(reconstructs(sharing, new ClientLogin(sharing.digest("another password"), issued.getKeys())));
+    }
+
+    //The first k keys a password is split into, with the digest of the password.
+    private static ClientLogin issue(SecretSharing sharing, String password) {
+        List<Key> keys = new ArrayList<>(sharing.preparation(password));
+        Collections.shuffle(keys);
+
+        List<String> issued = new ArrayList<>();
+        for (Key key : keys.subList(0, sharing.requiredKeys())) {
+            issued.add(key.toString());
+        }
+        return new ClientLogin(sharing.digest(password), issued);
+    }
+
+    private static boolean reconstructs(SecretSharing sharing, ClientLogin login) {
+        List<Key> keys = new ArrayList<>();
+        for (String clientKey : login.getKeys()) {
+            keys.add(sharing.parseKey(clientKey));
+        }
+        return sharing.reconstruction(keys, login.getDigest());
+    }
+
+    private static LocalStore open(String fileName) throws IOException {
+        return new LocalStore(fileName, fileName + ".json", 2, KeyValueStore.Engine.HEAP, 1 << 20,
+                GroupCommit.Durability.NONE);
+    }
+
+    //Path of a file of the given name in a new directory.
+    private String newFile(String name) throws IOException {
+        return new File(folder.newFolder(), name).getPath();
+    }
+}
@@ -0,0 +1,136 @@
+package com.northeastern.edu.utils;
+
+import generated.thrift.impl.CommunicationService;
+import generated.thrift.impl.MessageType;
+import generated.thrift.impl.OperationType;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decides writes in basic Paxos mode among three servers with quorums that
+ * are not majorities, so a round only succeeds if the proposer counts
+ * itself as one of the acceptors.
+ */
+public class BasicPaxosQuorumTest {
+
+    //Number of servers started.
+    private static final int SERVERS = 3;
+
+    //Time a write has to be decided and learned everywhere, in milliseconds.
+    private static final long DEADLINE_MILLIS = 10000;
+
+    //System properties set by the tests.
+    private static final String[] PROPERTIES = {"paxos.mode", "paxos.quorum.prepare", "paxos.quorum.accept",
+            "paxos.quorum.read", "replica.heartbeat", "replica.backoff"};
+
+    private final List<ServerServiceHandler> handlers = new ArrayList<>();
+    private final List<TServer> servers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        System.setProperty("paxos.mode", "basic");
+        //The servers come up one after another, so the pings sent before
+        //the others listen fail; retry them quickly.
+        System.setProperty("replica.heartbeat", "50");
+        System.setProperty("replica.backoff", "100");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (TServer server : servers) {
+            server.stop();
+        }
+        for (ServerServiceHandler handler : handlers) {
+            handler.localStore.close();
+        }
+        for (String property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    @Test
+    public void decidesWithAllPromisesAndOneAccept() throws Exception {
+        startServers(3, 1, 3);
+
+        storeUntilDecided(handlers.get(0), "prepare-all");
+        assertLearnedEverywhere("prepare-all");
+    }
+
+    @Test
+    public void decidesWithOnePromiseAndAllAccepts() throws Exception {
+        startServers(1, 3, 1);
+
+        storeUntilDecided(handlers.get(1), "accept-all");
+        assertLearnedEverywhere("accept-all");
+    }
+
+    //Starts the servers with the given quorum sizes, each listening for
+    //the others on a free port.
+    private void startServers(int prepare, int accept, int read) throws Exception {
+        System.setProperty("paxos.quorum.prepare", String.valueOf(prepare));
+        System.setProperty("paxos.quorum.accept", String.valueOf(accept));
+        System.setProperty("paxos.quorum.read", String.valueOf(read));
+
+        List<Integer> communicationPorts = new ArrayList<>();
+        for (int index = 0; index < SERVERS; index++) {
+            communicationPorts.add(freePort());
+        }
+
+        for (Integer communicationPort : communicationPorts) {
+            List<Integer> replicaPorts = new ArrayList<>(communicationPorts);
+            replicaPorts.remove(communicationPort);
+            ServerServiceHandler handler = new ServerServiceHandler(replicaPorts, freePort(), communicationPort);
+            handlers.add(handler);
+
+            TServer server = new TThreadPoolServer(new TThreadPoolServer.Args(new TServerSocket(communicationPort))
+                    .processor(new CommunicationService.Processor<>(handler))
+                    .transportFactory(new TFramedTransport.Factory()));
+            servers.add(server);
+            Thread thread = new Thread(server::serve, "server-" + communicationPort);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    //Writes a key through a server until a round decides it, as the
+    //replicas may still be counted down when the first rounds start.
+    private void storeUntilDecided(ServerServiceHandler handler, String key) throws Exception {
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        while (handler.storeKeyValue(Collections.singletonMap(key, "value"), OperationType.WRITE).type
+                != MessageType.SUCCESS) {
+            assertTrue("No round decided the write of " + key, System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    //Waits until every server stored the value of a key.
+    private void assertLearnedEverywhere(String key) throws Exception {
+        long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+        for (ServerServiceHandler handler : handlers) {
+            while (handler.getStoredValue(key).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals("value", handler.getStoredValue(key));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
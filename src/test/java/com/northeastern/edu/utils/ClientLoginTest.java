@@ -0,0 +1,116 @@
+package com.northeastern.edu.utils;
+
+import generated.thrift.impl.Command;
+import generated.thrift.impl.MessageType;
+import generated.thrift.impl.OperationType;
+import org.apache.thrift.TException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Logs in several clients through one server, one after the other and
+ * at the same time, and checks each keeps reconstructing its own secret
+ * whatever the others logged in with.
+ */
+public class ClientLoginTest {
+
+    //Number of clients logging in at the same time.
+    private static final int CLIENTS = 8;
+
+    private LearningHandler handler;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new LearningHandler(freePort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        handler.localStore.close();
+    }
+
+    @Test
+    public void clientsLoggingInOneAfterTheOther() throws TException {
+        assertEquals(MessageType.SUCCESS, handler.login("password of a", "client-a").type);
+        assertEquals(MessageType.SUCCESS, handler.login("password of b", "client-b").type);
+
+        assertEquals(MessageType.SUCCESS_WRITE, handler.login("password of a", "client-a").type);
+        assertEquals(MessageType.SUCCESS_WRITE, handler.login("password of b", "client-b").type);
+    }
+
+    @Test
+    public void clientsLoggingInAtTheSameTime() throws Exception {
+        assertEquals(Collections.nCopies(CLIENTS, MessageType.SUCCESS), loginAll());
+        assertEquals(Collections.nCopies(CLIENTS, MessageType.SUCCESS_WRITE), loginAll());
+    }
+
+    @Test
+    public void clientWithALongPassword() throws TException {
+        String password = String.join("", Collections.nCopies(100, "p"));
+
+        assertEquals(MessageType.SUCCESS, handler.login(password, "client-a").type);
+        assertEquals(MessageType.SUCCESS_WRITE, handler.login(password, "client-a").type);
+    }
+
+    //Logs every client in on its own thread and returns the responses in order.
+    private List<MessageType> loginAll() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Callable<MessageType>> logins = new ArrayList<>();
+            for (int client = 0; client < CLIENTS; client++) {
+                final int index = client;
+                logins.add(() -> handler.login("password " + index, "client-" + index).type);
+            }
+
+            List<MessageType> responses = new ArrayList<>();
+            for (Future<MessageType> response : executor.invokeAll(logins)) {
+                responses.add(response.get());
+            }
+            return responses;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    //Handler without replicas that learns every value it is asked to write.
+    private static final class LearningHandler extends ServiceHandler {
+
+        LearningHandler(int portNumber) throws IOException {
+            super(Collections.emptyList(), portNumber);
+        }
+
+        @Override
+        protected boolean canWriteOrDelete(Map<String, String> keyValue, OperationType operationType)
+                throws TException {
+            Command command = new Command();
+            command.operationType = operationType;
+            command.value = keyValue;
+            try {
+                learnValue(0, 0, Collections.singletonList(command));
+            } catch (IOException e) {
+                throw new TException(e);
+            }
+            return true;
+        }
+    }
+}